@@ -0,0 +1,55 @@
+package carpet.script.value;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip latency of coroutine handoffs: the task does a locking {@code yield}, the caller picks the value up
+ * with {@code task_await} and answers with {@code task_send}, which releases the task for its next yield.
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadValueBenchmark
+{
+    private ThreadValue coroutine;
+
+    @Setup
+    public void startTask()
+    {
+        coroutine = new ThreadValue(new CompletableFuture<>());
+        Value item = new NumericValue(1);
+        Thread task = new Thread(() -> {
+            while (true)
+            {
+                coroutine.ping(item, true);
+            }
+        }, "Coroutine benchmark task");
+        // stays parked in its last yield, and goes away with the forked JVM
+        task.setDaemon(true);
+        task.start();
+    }
+
+    @Benchmark
+    public Value roundTrip()
+    {
+        Value yielded = coroutine.next();
+        coroutine.send(yielded);
+        return yielded;
+    }
+}
@@ -27,6 +27,7 @@ import carpet.logging.HUDController;
 import carpet.script.external.Carpet;
 import carpet.script.external.Vanilla;
 import carpet.script.utils.ParticleParser;
+import carpet.utils.MetricsExporter;
 import carpet.utils.MobAI;
 import carpet.utils.SpawnReporter;
 import com.mojang.brigadier.CommandDispatcher;
@@ -56,6 +57,7 @@ public class CarpetServer // static for now - easier to handle all around the co
     public static void manageExtension(CarpetExtension extension)
     {
         extensions.add(extension);
+        Carpet.onExtensionAdded(extension);
         // Stop the stupid practice of extensions mixing into Carpet just to register themselves
         if (StackWalker.getInstance().walk(stream -> stream.skip(1)
                 .anyMatch(el -> el.getClassName() == CarpetServer.class.getName())))
@@ -105,6 +107,7 @@ public class CarpetServer // static for now - easier to handle all around the co
     public static void tick(MinecraftServer server)
     {
         HUDController.update_hud(server, null);
+        MetricsExporter.tick(server);
         if (scriptServer != null) scriptServer.tick();
 
         //in case something happens
@@ -6,6 +6,7 @@ import carpet.api.settings.Validators;
 import carpet.api.settings.Validator;
 import carpet.script.utils.AppStoreManager;
 import carpet.settings.Rule;
+import carpet.utils.CarpetProfiler;
 import carpet.utils.Translations;
 import carpet.utils.CommandHelper;
 import carpet.utils.Messenger;
@@ -420,6 +421,49 @@ public class CarpetSettings
     )
     public static String commandProfile = "true";
 
+    private static class ProfilerHistoryValidator extends Validator<Integer>
+    {
+        @Override public Integer validate(CommandSourceStack source, CarpetRule<Integer> currentRule, Integer newValue, String string)
+        {
+            if (newValue < 0 || newValue > 60)
+            {
+                return null;
+            }
+            CarpetProfiler.setHistoryLength(newValue * 60 * 20);
+            return newValue;
+        }
+        @Override
+        public String description() { return "You must choose a number of minutes from 0 to 60";}
+    }
+
+    @Rule(
+            desc = "Keeps a rolling history of tick times for the given number of minutes",
+            extra = {
+                    "Lets '/profile history' look into lag spikes after they happened",
+                    "Minutes are counted at 20 ticks per second, 0 turns it off"
+            },
+            options = {"0", "1", "5", "15"},
+            category = COMMAND,
+            strict = false,
+            validate = ProfilerHistoryValidator.class
+    )
+    public static int profilerHistory = 0;
+
+    @Rule(
+            desc = "Writes server metrics to carpet_metrics.prom in the world folder every given number of seconds",
+            extra = {
+                    "Uses the Prometheus text format, for the node exporter textfile collector or any other scraper",
+                    "Has MSPT and TPS, hopper counters, mobcaps, spawn tracking and packet counts",
+                    "and tick time percentiles and profiler sections when profilerHistory is on",
+                    "0 turns it off"
+            },
+            options = {"0", "5", "15", "60"},
+            category = FEATURE,
+            strict = false,
+            validate = Validators.NonNegativeNumber.class
+    )
+    public static int metricsExport = 0;
+
     @Rule(
             desc = "Required permission level for /perf command",
             options = {"2", "4"},
@@ -525,6 +569,29 @@ public class CarpetSettings
     )
     public static boolean scriptsOptimization = true;
 
+    @Rule(
+            desc = "Compiles frequently called scarpet functions into JVM classes",
+            extra = {
+                    "Only applies to apps loaded with scriptsOptimization enabled",
+                    "Reload apps after changing to take effect"
+            },
+            category = {SCARPET, EXPERIMENTAL}
+    )
+    public static boolean scriptsCompilation = false;
+
+    @Rule(
+            desc = "Number of block changes from scarpet tasks applied each tick",
+            extra = {
+                    "With 0, each change made with 'set' off the main thread waits for the server to apply it",
+                    "Otherwise changes are queued and applied in order, up to that many per tick, and tasks don't wait for them"
+            },
+            options = {"0", "1000", "10000", "100000"},
+            category = {SCARPET, OPTIMIZATION},
+            strict = false,
+            validate = Validators.NonNegativeNumber.class
+    )
+    public static int scriptsTaskWriteBudget = 0;
+
     private static class ScarpetAppStore extends Validator<String> {
         @Override
         public String validate(CommandSourceStack source, CarpetRule<String> currentRule, String newValue, String stringInput) {
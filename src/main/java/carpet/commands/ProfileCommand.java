@@ -28,7 +28,17 @@ public class ProfileCommand
                 then(literal("entities").
                         executes((c) -> healthEntities(c.getSource(), 100)).
                         then(argument("ticks", integer(20,24000)).
-                                executes((c) -> healthEntities(c.getSource(), getInteger(c, "ticks")))));
+                                executes((c) -> healthEntities(c.getSource(), getInteger(c, "ticks"))))).
+                then(literal("chunks").
+                        executes((c) -> healthChunks(c.getSource(), 100, false)).
+                        then(argument("ticks", integer(20,24000)).
+                                executes((c) -> healthChunks(c.getSource(), getInteger(c, "ticks"), false)).
+                                then(literal("show").
+                                        executes((c) -> healthChunks(c.getSource(), getInteger(c, "ticks"), true))))).
+                then(literal("history").
+                        executes((c) -> CarpetProfiler.report_history(c.getSource(), 3600)).
+                        then(argument("seconds", integer(1,3600)).
+                                executes((c) -> CarpetProfiler.report_history(c.getSource(), getInteger(c, "seconds")))));
         dispatcher.register(literalargumentbuilder);
     }
 
@@ -43,4 +53,10 @@ public class ProfileCommand
         CarpetProfiler.prepare_entity_report(source, ticks);
         return 1;
     }
+
+    public static int healthChunks(CommandSourceStack source, int ticks, boolean show)
+    {
+        CarpetProfiler.prepare_chunk_report(source, ticks, show);
+        return 1;
+    }
 }
@@ -13,5 +13,5 @@ public interface ThreadedAnvilChunkStorageInterface
 
     //void releaseRelightTicket(ChunkPos pos);
 
-    //Iterable<ChunkHolder> getChunksCM();
+    Iterable<ChunkHolder> getChunksCM();
 }
@@ -412,6 +412,14 @@ public class HopperCounter
         }
     }
 
+    /**
+     * In game ticks since the counter started counting, 0 if it didn't start yet
+     */
+    public long getElapsedTicks(MinecraftServer server)
+    {
+        return startTick < 0 ? 0 : server.overworld().getGameTime() - startTick;
+    }
+
     /**
      * The total number of items in the counter
      */
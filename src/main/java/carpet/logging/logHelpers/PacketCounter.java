@@ -4,5 +4,10 @@ public class PacketCounter
 {
     public static long totalOut=0;
     public static long totalIn=0;
-    public static void reset() {totalIn = 0L; totalOut = 0L; }
+    // packets counted before the last reset, so totals since the start can still be exported
+    private static long previousOut=0;
+    private static long previousIn=0;
+    public static void reset() {previousIn += totalIn; previousOut += totalOut; totalIn = 0L; totalOut = 0L; }
+    public static long allIn() {return previousIn + totalIn; }
+    public static long allOut() {return previousOut + totalOut; }
 }
@@ -1,6 +1,8 @@
 package carpet.mixins;
 
 import carpet.utils.CarpetProfiler;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
@@ -14,16 +16,20 @@ public class BoundTickingBlockEntity_profilerMixin<T extends BlockEntity>
 {
     @Shadow @Final private T blockEntity;
     CarpetProfiler.ProfilerToken entitySection;
+    long chunkSectionStart;
 
     @Inject(method = "tick()V", at = @At("HEAD"))
     private void startTileEntitySection(CallbackInfo ci)
     {
         entitySection = CarpetProfiler.start_block_entity_section(blockEntity.getLevel(), blockEntity, CarpetProfiler.TYPE.TILEENTITY);
+        chunkSectionStart = CarpetProfiler.start_chunk_section(blockEntity.getLevel());
     }
 
     @Inject(method = "tick()V", at = @At("RETURN"))
     private void endTileEntitySection(CallbackInfo ci)
     {
         CarpetProfiler.end_current_entity_section(entitySection);
+        BlockPos pos = blockEntity.getBlockPos();
+        CarpetProfiler.end_chunk_section(blockEntity.getLevel(), ChunkPos.asLong(pos), CarpetProfiler.CHUNK_TIME.BLOCK_ENTITIES, chunkSectionStart);
     }
 }
@@ -35,7 +35,6 @@ import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.chunk.ChunkAccess;
 import net.minecraft.world.level.chunk.LevelChunk;
 import net.minecraft.world.level.chunk.status.ChunkStatus;
-import net.minecraft.world.level.chunk.storage.RegionFile;
 import org.apache.commons.lang3.tuple.Pair;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
@@ -205,12 +204,11 @@ public abstract class ChunkMap_scarpetChunkCreationMixin implements ThreadedAnvi
     @Unique
     private Set<ChunkPos> getExistingChunks(Set<ChunkPos> requestedChunks)
     {
-        Map<String, RegionFile> regionCache = new HashMap<>();
         Set<ChunkPos> ret = new HashSet<>();
 
         for (ChunkPos pos : requestedChunks)
         {
-            if (WorldTools.canHasChunk(this.level, pos, regionCache, true))
+            if (WorldTools.canHasChunk(this.level, pos, true))
             {
                 ret.add(pos);
             }
@@ -219,6 +217,12 @@ public abstract class ChunkMap_scarpetChunkCreationMixin implements ThreadedAnvi
         return ret;
     }
 
+    @Override
+    public Iterable<ChunkHolder> getChunksCM()
+    {
+        return getChunks();
+    }
+
 
     /*
     @Unique
@@ -308,7 +312,7 @@ public abstract class ChunkMap_scarpetChunkCreationMixin implements ThreadedAnvi
         this.tickTicketManager();
         if (this.updatingChunkMap.get(pos.toLong()).getLastAvailable() == null) // chunk unloaded
         {
-            if (WorldTools.canHasChunk(this.level, pos, null, true))
+            if (WorldTools.canHasChunk(this.level, pos, true))
             {
                 this.updatingChunkMap.get(pos.toLong()).getOrScheduleFuture(ChunkStatus.EMPTY, (ChunkMap) (Object) this);
             }
@@ -558,12 +562,5 @@ public abstract class ChunkMap_scarpetChunkCreationMixin implements ThreadedAnvi
     }
 
 
-
-    @Override
-    public Iterable<ChunkHolder> getChunksCM()
-    {
-        return getChunks();
-    }
-
      */
 }
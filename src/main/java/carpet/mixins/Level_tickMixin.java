@@ -25,6 +25,7 @@ public abstract class Level_tickMixin implements LevelInterface
     @Shadow @Final protected NeighborUpdater neighborUpdater;
     CarpetProfiler.ProfilerToken currentSection;
     CarpetProfiler.ProfilerToken entitySection;
+    long entityChunkStart;
 
     Map<EntityType<?>, Entity> precookedMobs = new HashMap<>();
 
@@ -54,11 +55,13 @@ public abstract class Level_tickMixin implements LevelInterface
     private void startEntity(Consumer<Entity> consumer_1, Entity e, CallbackInfo ci)
     {
         entitySection =  CarpetProfiler.start_entity_section((Level) (Object) this, e, CarpetProfiler.TYPE.ENTITY);
+        entityChunkStart = CarpetProfiler.start_chunk_section((Level) (Object) this);
     }
 
     @Inject(method = "guardEntityTick", at = @At("TAIL"))
     private void endEntity(Consumer<Entity> call, Entity e, CallbackInfo ci) {
         CarpetProfiler.end_current_entity_section(entitySection);
+        CarpetProfiler.end_chunk_section((Level) (Object) this, e.chunkPosition().toLong(), CarpetProfiler.CHUNK_TIME.ENTITIES, entityChunkStart);
     }
 
 
@@ -2,6 +2,7 @@ package carpet.mixins;
 
 import carpet.fakes.MinecraftServerInterface;
 import carpet.script.CarpetScriptServer;
+import carpet.script.ZipFileSystems;
 import net.minecraft.Util;
 import net.minecraft.core.RegistryAccess;
 import net.minecraft.resources.ResourceKey;
@@ -21,6 +22,7 @@ import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
 import java.util.Map;
 import java.util.function.BooleanSupplier;
@@ -99,6 +101,12 @@ public abstract class MinecraftServer_scarpetMixin extends ReentrantBlockableEve
         ENDER_TICK.onTick((MinecraftServer) (Object) this);
     }
 
+    @Inject(method = "saveEverything", at = @At("RETURN"))
+    private void saveScarpetZipFiles(CallbackInfoReturnable<Boolean> cir)
+    {
+        ZipFileSystems.closeAll();
+    }
+
     @Override
     public void reloadAfterReload(RegistryAccess newRegs)
     {
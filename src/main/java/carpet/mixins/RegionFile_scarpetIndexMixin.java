@@ -0,0 +1,32 @@
+package carpet.mixins;
+
+import carpet.script.utils.RegionHeaderIndex;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.storage.RegionFile;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+@Mixin(RegionFile.class)
+public class RegionFile_scarpetIndexMixin
+{
+    @Shadow @Final private Path path;
+
+    @Inject(method = "write", at = @At("RETURN"))
+    private void onChunkWritten(ChunkPos pos, ByteBuffer buffer, CallbackInfo ci)
+    {
+        RegionHeaderIndex.invalidate(path);
+    }
+
+    @Inject(method = "clear", at = @At("RETURN"))
+    private void onChunkCleared(ChunkPos pos, CallbackInfo ci)
+    {
+        RegionHeaderIndex.invalidate(path);
+    }
+}
@@ -2,6 +2,7 @@ package carpet.mixins;
 
 import carpet.fakes.LevelInterface;
 import carpet.utils.CarpetProfiler;
+import net.minecraft.core.BlockPos;
 import net.minecraft.core.Holder;
 import net.minecraft.core.RegistryAccess;
 import org.spongepowered.asm.mixin.Mixin;
@@ -14,7 +15,11 @@ import java.util.function.Supplier;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.util.profiling.ProfilerFiller;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.material.Fluid;
 import net.minecraft.world.level.dimension.DimensionType;
 import net.minecraft.world.level.storage.WritableLevelData;
 
@@ -27,6 +32,12 @@ public abstract class ServerLevel_tickMixin extends Level implements LevelInterf
     }
 
     private CarpetProfiler.ProfilerToken currentSection;
+    private CarpetProfiler.CHUNK_PHASE chunkPhase;
+    private long chunkPhaseStart;
+    // one per hook, so a start left behind by one of them is never charged to another
+    private long chunkRandomTicksStart;
+    private long chunkBlockTickStart;
+    private long chunkFluidTickStart;
 
     @Inject(method = "tick", at = @At(
             value = "CONSTANT",
@@ -105,12 +116,23 @@ public abstract class ServerLevel_tickMixin extends Level implements LevelInterf
         currentSection = null;
     }
 
-    // Chunk
+    // Chunk, these run for every ticked chunk, so the history gets their times without tokens
+
+    private void switchChunkPhase(CarpetProfiler.CHUNK_PHASE next) {
+        if (currentSection != null) {
+            CarpetProfiler.end_current_section(currentSection);
+        }
+        currentSection = next == null ? null : CarpetProfiler.start_chunk_phase((Level) (Object) this, next);
+        chunkPhaseStart = CarpetProfiler.end_chunk_phase((Level) (Object) this, chunkPhase, chunkPhaseStart);
+        chunkPhase = next;
+    }
 
     @Inject(method = "tickChunk", at = @At("HEAD"))
     private void startThunderSpawningSection(CallbackInfo ci) {
         // Counting it in spawning because it's spawning skeleton horses
-        currentSection = CarpetProfiler.start_section((Level) (Object) this, "Spawning", CarpetProfiler.TYPE.GENERAL);
+        currentSection = null;
+        chunkPhase = null;
+        switchChunkPhase(CarpetProfiler.CHUNK_PHASE.SPAWNING);
     }
 
     @Inject(method = "tickChunk", at = @At(
@@ -118,10 +140,7 @@ public abstract class ServerLevel_tickMixin extends Level implements LevelInterf
             args = "stringValue=iceandsnow"
     ))
     private void endThunderSpawningAndStartIceSnowRandomTicks(CallbackInfo ci) {
-        if (currentSection != null) {
-            CarpetProfiler.end_current_section(currentSection);
-            currentSection = CarpetProfiler.start_section((Level) (Object) this, "Environment", CarpetProfiler.TYPE.GENERAL);
-        }
+        switchChunkPhase(CarpetProfiler.CHUNK_PHASE.ENVIRONMENT);
     }
 
     @Inject(method = "tickChunk", at = @At(
@@ -129,18 +148,51 @@ public abstract class ServerLevel_tickMixin extends Level implements LevelInterf
             args = "stringValue=tickBlocks"
     ))
     private void endIceAndSnowAndStartRandomTicks(CallbackInfo ci) {
-        if (currentSection != null) {
-            CarpetProfiler.end_current_section(currentSection);
-            currentSection = CarpetProfiler.start_section((Level) (Object) this, "Random Ticks", CarpetProfiler.TYPE.GENERAL);
-        }
+        switchChunkPhase(CarpetProfiler.CHUNK_PHASE.RANDOM_TICKS);
     }
 
     @Inject(method = "tickChunk", at = @At("RETURN"))
     private void endRandomTicks(CallbackInfo ci) {
-        if (currentSection != null) {
-            CarpetProfiler.end_current_section(currentSection);
-            currentSection = null;
-        }
+        switchChunkPhase(null);
+        chunkPhaseStart = 0L;
+    }
+
+    // Per chunk times
+
+    @Inject(method = "tickChunk", at = @At(
+            value = "CONSTANT",
+            args = "stringValue=tickBlocks"
+    ))
+    private void startChunkRandomTicks(LevelChunk chunk, int randomTickSpeed, CallbackInfo ci) {
+        chunkRandomTicksStart = CarpetProfiler.start_chunk_section((Level) (Object) this);
+    }
+
+    @Inject(method = "tickChunk", at = @At("RETURN"))
+    private void endChunkRandomTicks(LevelChunk chunk, int randomTickSpeed, CallbackInfo ci) {
+        CarpetProfiler.end_chunk_section((Level) (Object) this, chunk.getPos().toLong(), CarpetProfiler.CHUNK_TIME.RANDOM_TICKS, chunkRandomTicksStart);
+        chunkRandomTicksStart = 0L;
+    }
+
+    @Inject(method = "tickBlock", at = @At("HEAD"))
+    private void startChunkBlockTick(BlockPos pos, Block block, CallbackInfo ci) {
+        chunkBlockTickStart = CarpetProfiler.start_chunk_section((Level) (Object) this);
+    }
+
+    @Inject(method = "tickBlock", at = @At("RETURN"))
+    private void endChunkBlockTick(BlockPos pos, Block block, CallbackInfo ci) {
+        CarpetProfiler.end_chunk_section((Level) (Object) this, ChunkPos.asLong(pos), CarpetProfiler.CHUNK_TIME.SCHEDULED_TICKS, chunkBlockTickStart);
+        chunkBlockTickStart = 0L;
+    }
+
+    @Inject(method = "tickFluid", at = @At("HEAD"))
+    private void startChunkFluidTick(BlockPos pos, Fluid fluid, CallbackInfo ci) {
+        chunkFluidTickStart = CarpetProfiler.start_chunk_section((Level) (Object) this);
+    }
+
+    @Inject(method = "tickFluid", at = @At("RETURN"))
+    private void endChunkFluidTick(BlockPos pos, Fluid fluid, CallbackInfo ci) {
+        CarpetProfiler.end_chunk_section((Level) (Object) this, ChunkPos.asLong(pos), CarpetProfiler.CHUNK_TIME.SCHEDULED_TICKS, chunkFluidTickStart);
+        chunkFluidTickStart = 0L;
     }
 
 }
@@ -40,9 +40,15 @@ public class CarpetContext extends Context
     protected void initialize()
     {
         super.initialize();
-        variables.put("_x", (c, t) -> Value.ZERO);
-        variables.put("_y", (c, t) -> Value.ZERO);
-        variables.put("_z", (c, t) -> Value.ZERO);
+        setVariable("_x", (c, t) -> Value.ZERO);
+        setVariable("_y", (c, t) -> Value.ZERO);
+        setVariable("_z", (c, t) -> Value.ZERO);
+    }
+
+    @Override
+    public CarpetScriptServer scriptServer()
+    {
+        return (CarpetScriptServer) super.scriptServer();
     }
 
     public MinecraftServer server()
@@ -6,6 +6,7 @@ import carpet.script.exception.InvalidCallbackException;
 import carpet.script.external.Carpet;
 import carpet.script.external.Vanilla;
 import carpet.script.utils.GlocalFlag;
+import carpet.script.utils.ScarpetCallEvent;
 import carpet.script.value.BlockValue;
 import carpet.script.value.BooleanValue;
 import carpet.script.value.EntityValue;
@@ -23,12 +24,11 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -74,7 +74,13 @@ import javax.annotation.Nullable;
 
 public class CarpetEventServer
 {
-    public final List<ScheduledCall> scheduledCalls = new LinkedList<>();
+    // ordered by the tick calls are due, and then by the order they were scheduled in
+    private final PriorityQueue<ScheduledCall> scheduledCalls = new PriorityQueue<>(
+            Comparator.comparingLong((ScheduledCall sc) -> sc.dueTime).thenComparingLong(sc -> sc.sequence));
+    private final Map<String, ScheduleToken> scheduleTokens = new HashMap<>();
+    private long scheduleTick;
+    private long scheduleSequence;
+    private int pendingCalls;
     public final CarpetScriptServer scriptServer;
     private static final List<Value> NOARGS = Collections.emptyList();
     public final Map<String, Event> customEvents = new HashMap<>();
@@ -161,18 +167,40 @@ public class CarpetEventServer
         }
     }
 
+    /**
+     * Shared by all the scheduled calls of an app, so unloading it drops them all at once.
+     * Cancelled calls stay in the queue until they come due, or the queue gets compacted.
+     */
+    private static class ScheduleToken
+    {
+        boolean cancelled;
+        int pending;
+    }
+
     public static class ScheduledCall extends Callback
     {
 
         private final CarpetContext ctx;
-        public long dueTime;
+        /**
+         * Event server tick at which the call runs
+         */
+        public final long dueTime;
+        private final long sequence;
+        private final ScheduleToken token;
 
-        public ScheduledCall(CarpetContext context, FunctionValue function, List<Value> args, long dueTime)
+        private ScheduledCall(CarpetContext context, FunctionValue function, List<Value> args, long dueTime, long sequence, ScheduleToken token)
         {
             // ignoring target as we will be always calling self
             super(context.host.getName(), null, function, args, (CarpetScriptServer) context.scriptServer());
             this.ctx = context.duplicate();
             this.dueTime = dueTime;
+            this.sequence = sequence;
+            this.token = token;
+        }
+
+        public boolean isCancelled()
+        {
+            return token != null && token.cancelled;
         }
 
         /**
@@ -189,6 +217,9 @@ public class CarpetEventServer
 
         private List<Callback> callList;
         private final List<Callback> removedCalls;
+        // calls that apply to each player name, in call order, built on first dispatch and dropped whenever callList changes
+        // or the player logs out
+        private final Map<String, List<Callback>> callsByTarget = new HashMap<>();
         private boolean inCall;
         private boolean inSignal;
         public final int reqArgs;
@@ -215,7 +246,10 @@ public class CarpetEventServer
         {
             if (!inCall && !inSignal)
             {
-                callList.removeIf(when);
+                if (callList.removeIf(when))
+                {
+                    callsByTarget.clear();
+                }
                 return;
             }
             // we are ok with list growing in the meantime and parallel access, we are only scanning.
@@ -229,6 +263,39 @@ public class CarpetEventServer
             }
         }
 
+        /**
+         * Calls that should run for a player, so ones targeting that player and ones without a target.
+         * Per player apps add a copy of each handler for every player, so filtering them upfront
+         * saves scanning everyone else's handlers on each event.
+         */
+        private List<Callback> callsFor(String target)
+        {
+            return callsByTarget.computeIfAbsent(target, name -> {
+                List<Callback> matching = new ArrayList<>();
+                for (Callback call : callList)
+                {
+                    if (call.optionalTarget == null || name.equals(call.optionalTarget))
+                    {
+                        matching.add(call);
+                    }
+                }
+                return matching.isEmpty() ? Collections.emptyList() : matching;
+            });
+        }
+
+        private void callListChanged()
+        {
+            callsByTarget.clear();
+        }
+
+        /**
+         * Drops the calls looked up for a player that left, so names of players that were once online don't pile up
+         */
+        private void forgetTarget(String target)
+        {
+            callsByTarget.remove(target);
+        }
+
         /**
          * Handles only built-in events from the events system
          *
@@ -256,35 +323,38 @@ public class CarpetEventServer
             {
                 return false;
             }
+            // supressing calls where target player hosts simply don't match
+            // handling global hosts with player targets is left to when the host is resolved (few calls deeper).
+            String nameCheck = perPlayerDistribution ? source.getTextName() : null;
+            List<Callback> calls = nameCheck == null ? callList : callsFor(nameCheck);
+            if (calls.isEmpty())
+            {
+                return false;
+            }
             Boolean isCancelled = scriptServer.events.handleEvents.runIfEnabled(() -> {
                 Runnable profilerToken = Carpet.startProfilerSection("Scarpet events");
                 List<Value> argv = argumentSupplier.get(); // empty for onTickDone
-                String nameCheck = perPlayerDistribution ? source.getTextName() : null;
                 assert argv.size() == reqArgs;
                 boolean cancelled = false;
+                List<Callback> allCalls = callList;
+                int knownCalls = allCalls.size();
                 try
                 {
                     // we are ok with list growing in the meantime
                     // which might happen during inCall or inSignal
                     inCall = true;
-                    for (int i = 0; i < callList.size(); i++)
+                    // stopping if the list got replaced by clearEverything
+                    for (int i = 0, count = calls.size(); i < count && !cancelled && callList == allCalls; i++)
                     {
-                        Callback call = callList.get(i);
-                        // supressing calls where target player hosts simply don't match
-                        // handling global hosts with player targets is left to when the host is resolved (few calls deeper).
-                        if (nameCheck != null && call.optionalTarget != null && !nameCheck.equals(call.optionalTarget))
-                        {
-                            continue;
-                        }
-                        CallbackResult result = call.execute(source, argv);
-                        if (result == CallbackResult.CANCEL)
-                        {
-                            cancelled = true;
-                            break;
-                        }
-                        if (result == CallbackResult.FAIL)
+                        cancelled = runCall(calls.get(i), source, argv);
+                    }
+                    // calls added while handling the event run as well
+                    for (int i = knownCalls; i < allCalls.size() && !cancelled && callList == allCalls; i++)
+                    {
+                        Callback call = allCalls.get(i);
+                        if (nameCheck == null || call.optionalTarget == null || nameCheck.equals(call.optionalTarget))
                         {
-                            removedCalls.add(call);
+                            cancelled = runCall(call, source, argv);
                         }
                     }
                 }
@@ -292,17 +362,34 @@ public class CarpetEventServer
                 {
                     inCall = false;
                 }
-                for (Callback call : removedCalls)
+                if (!removedCalls.isEmpty())
                 {
-                    callList.remove(call);
+                    for (Callback call : removedCalls)
+                    {
+                        callList.remove(call);
+                    }
+                    removedCalls.clear();
+                    callListChanged();
                 }
-                removedCalls.clear();
                 profilerToken.run();
                 return cancelled;
             });
             return isCancelled != null && isCancelled;
         }
 
+        /**
+         * Runs a single handler, returns whether it cancelled the event
+         */
+        private boolean runCall(Callback call, CommandSourceStack source, List<Value> argv)
+        {
+            CallbackResult result = call.execute(source, argv);
+            if (result == CallbackResult.FAIL)
+            {
+                removedCalls.add(call);
+            }
+            return result == CallbackResult.CANCEL;
+        }
+
         public int signal(CommandSourceStack sender, @Nullable ServerPlayer recipient, List<Value> callArg)
         {
             if (callList.isEmpty())
@@ -364,6 +451,7 @@ public class CarpetEventServer
 
             removeEventCall(hostName, target, udf.getString());
             callList.add(new Callback(hostName, target, udf, null, scriptServer));
+            callListChanged();
             return true;
         }
 
@@ -376,6 +464,7 @@ public class CarpetEventServer
             //removing duplicates
             removeEventCall(host.getName(), host.user, function.getString());
             callList.add(new Callback(host.getName(), host.user, function, args, (CarpetScriptServer) host.scriptServer()));
+            callListChanged();
             return true;
         }
 
@@ -405,6 +494,7 @@ public class CarpetEventServer
                 }
             });
             callList.addAll(copyCalls);
+            callListChanged();
         }
 
         public void clearEverything()
@@ -415,11 +505,13 @@ public class CarpetEventServer
                 callList = new ArrayList<>();
             }
             callList.clear();
+            callListChanged();
         }
 
         public void sortByPriority(CarpetScriptServer scriptServer)
         {
             callList.sort(Comparator.comparingDouble(c -> -scriptServer.getAppHostByName(c.host).eventPriority));
+            callListChanged();
         }
     }
 
@@ -1193,6 +1285,12 @@ public class CarpetEventServer
             host.scriptServer().events.customEvents.values().forEach((e) -> e.handler.createChildEvents(host));
         }
 
+        // only built-in events split their calls by player, custom ones have nothing to forget
+        public static void forgetPlayer(String name)
+        {
+            byName.values().forEach(e -> e.handler.forgetTarget(name));
+        }
+
         public static void clearAllBuiltinEvents()
         {
             byName.values().forEach(e -> e.handler.clearEverything());
@@ -1375,17 +1473,21 @@ public class CarpetEventServer
         {
             return;
         }
-        Iterator<ScheduledCall> eventIterator = scheduledCalls.iterator();
+        scheduleTick++;
         List<ScheduledCall> currentCalls = new ArrayList<>();
-        while (eventIterator.hasNext())
+        while (!scheduledCalls.isEmpty() && scheduledCalls.peek().dueTime <= scheduleTick)
         {
-            ScheduledCall call = eventIterator.next();
-            call.dueTime--;
-            if (call.dueTime <= 0)
+            ScheduledCall call = scheduledCalls.poll();
+            if (call.isCancelled())
             {
-                currentCalls.add(call);
-                eventIterator.remove();
+                continue;
             }
+            pendingCalls--;
+            if (call.token != null)
+            {
+                call.token.pending--;
+            }
+            currentCalls.add(call);
         }
         for (ScheduledCall call : currentCalls)
         {
@@ -1396,7 +1498,38 @@ public class CarpetEventServer
 
     public void scheduleCall(CarpetContext context, FunctionValue function, List<Value> args, long due)
     {
-        scheduledCalls.add(new ScheduledCall(context, function, args, due));
+        String hostName = context.host.getName();
+        ScheduleToken token = hostName == null ? null : scheduleTokens.computeIfAbsent(hostName, n -> new ScheduleToken());
+        // calls scheduled with no delay still wait for the next tick
+        scheduledCalls.add(new ScheduledCall(context, function, args, scheduleTick + Math.max(due, 1), scheduleSequence++, token));
+        pendingCalls++;
+        if (token != null)
+        {
+            token.pending++;
+        }
+    }
+
+    /**
+     * Number of scheduled calls waiting to run
+     */
+    public int scheduledCallCount()
+    {
+        return pendingCalls;
+    }
+
+    /**
+     * Number of scheduled calls waiting to run for each app, calls from the global host are not included
+     */
+    public Map<String, Integer> scheduledCallsByHost()
+    {
+        Map<String, Integer> counts = new HashMap<>();
+        scheduleTokens.forEach((name, token) -> {
+            if (token.pending > 0)
+            {
+                counts.put(name, token.pending);
+            }
+        });
+        return counts;
     }
 
     public void runScheduledCall(BlockPos origin, CommandSourceStack source, String hostname, CarpetScriptHost host, FunctionValue udf, List<Value> argv)
@@ -1405,6 +1538,8 @@ public class CarpetEventServer
         {
             return;
         }
+        ScarpetCallEvent event = new ScarpetCallEvent();
+        event.begin();
         try
         {
             host.callUDF(origin, source, udf, argv);
@@ -1412,6 +1547,23 @@ public class CarpetEventServer
         catch (NullPointerException | InvalidCallbackException | IntegrityException ignored)
         {
         }
+        finally
+        {
+            commitCallEvent(event, "schedule", hostname, udf, null);
+        }
+    }
+
+    private static void commitCallEvent(ScarpetCallEvent event, String kind, String app, FunctionValue udf, @Nullable String target)
+    {
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.kind = kind;
+            event.app = app;
+            event.function = udf.getString();
+            event.target = target;
+            event.commit();
+        }
     }
 
     public CallbackResult runEventCall(CommandSourceStack sender, String hostname, String optionalTarget, FunctionValue udf, List<Value> argv)
@@ -1442,6 +1594,8 @@ public class CarpetEventServer
         {
             return CallbackResult.FAIL;
         }
+        ScarpetCallEvent event = new ScarpetCallEvent();
+        event.begin();
         try
         {
             Value returnValue = executingHost.callUDF(source, udf, argv);
@@ -1452,6 +1606,10 @@ public class CarpetEventServer
             CarpetScriptServer.LOG.error("Got exception when running event call ", error);
             return CallbackResult.FAIL;
         }
+        finally
+        {
+            commitCallEvent(event, "event", hostname, udf, optionalTarget);
+        }
     }
 
     public boolean addEventFromCommand(CommandSourceStack source, String event, String host, String funName)
@@ -1550,6 +1708,16 @@ public class CarpetEventServer
             }
         }
         // remove scheduled calls
-        scheduledCalls.removeIf(sc -> sc.host != null && sc.host.equals(host.getName()));
+        ScheduleToken token = host.getName() == null ? null : scheduleTokens.remove(host.getName());
+        if (token != null)
+        {
+            token.cancelled = true;
+            pendingCalls -= token.pending;
+            // drop cancelled calls once they make up most of the queue, so they don't hold on to their apps
+            if (scheduledCalls.size() > 2 * pendingCalls + 64)
+            {
+                scheduledCalls.removeIf(ScheduledCall::isCancelled);
+            }
+        }
     }
 }
\ No newline at end of file
@@ -61,6 +61,21 @@ public class CarpetExpression
         Carpet.handleExtensionsAPI(this);
     }
 
+    /**
+     * Wraps an expression that already has the API registered, i.e. one handed out by the {@link ExpressionCache}
+     */
+    public CarpetExpression(Expression parsed, CommandSourceStack source, BlockPos origin)
+    {
+        this.origin = origin;
+        this.source = source;
+        this.expr = parsed;
+    }
+
+    static Expression createExpression(Module module, String expression, CommandSourceStack source, BlockPos origin)
+    {
+        return new CarpetExpression(module, expression, source, origin).expr;
+    }
+
     public boolean fillAndScanCommand(ScriptHost host, int x, int y, int z)
     {
         CarpetScriptServer scriptServer = (CarpetScriptServer) host.scriptServer();
@@ -16,6 +16,7 @@ import carpet.script.external.Vanilla;
 import carpet.script.utils.AppStoreManager;
 import carpet.script.value.EntityValue;
 import carpet.script.value.FunctionValue;
+import carpet.script.value.LazyListValue;
 import carpet.script.value.ListValue;
 import carpet.script.value.MapValue;
 import carpet.script.value.NumericValue;
@@ -53,6 +54,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -932,6 +934,7 @@ public class CarpetScriptHost extends ScriptHost
     public void onClose()
     {
         super.onClose();
+        scriptServer().expressionCache.invalidate(this);
         FunctionValue closing = getFunction("__on_close");
         if (closing != null && (parent != null || !isPerUser()))
         // either global instance of a global task, or
@@ -1021,6 +1024,11 @@ public class CarpetScriptHost extends ScriptHost
         return isDefaultApp() && !fdesc.isShared ? null : fdesc.listFile(main);
     }
 
+    public LazyListValue readLogFile(FileArgument fdesc, Function<String, Value> parser)
+    {
+        return isDefaultApp() && !fdesc.isShared ? null : fdesc.readLogFile(main, parser);
+    }
+
     public JsonElement readJsonFile(FileArgument fdesc)
     {
         return isDefaultApp() && !fdesc.isShared ? null : fdesc.readJsonFile(main);
@@ -1109,7 +1117,7 @@ public class CarpetScriptHost extends ScriptHost
         format += " ";
         List<String> stringsToFormat = new ArrayList<>();
         TreeMap<Integer, String> posToLocal = new TreeMap<>(); //Holds whether a local variable name is found at a specific index
-        for (String local : context.variables.keySet())
+        for (String local : context.getAllVariableNames())
         {
             int pos = line.indexOf(local);
             while (pos != -1)
@@ -1131,7 +1139,7 @@ public class CarpetScriptHost extends ScriptHost
             }
             stringsToFormat.add(format + line.substring(lastPos, foundLocal.getKey()));
             stringsToFormat.add(format + foundLocal.getValue());
-            Value val = context.variables.get(foundLocal.getValue()).evalValue(context);
+            Value val = context.getVariable(foundLocal.getValue()).evalValue(context);
             String type = val.getTypeString();
             String value;
             try
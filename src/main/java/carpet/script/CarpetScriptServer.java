@@ -62,10 +62,12 @@ public class CarpetScriptServer extends ScriptServer
     public Map<String, CarpetScriptHost> modules;
     public Set<String> unloadableModules;
     public long tickStart;
-    public boolean stopAll;
+    public volatile boolean stopAll;
     public int tickDepth;
     private Set<String> holyMoly;
     public CarpetEventServer events;
+    public ExpressionCache expressionCache;
+    public final WorldWriteQueue worldWrites;
 
     private static final List<Module> bundledModuleData = new ArrayList<>();
     private static final List<Module> ruleModuleData = new ArrayList<>();
@@ -110,12 +112,14 @@ public class CarpetScriptServer extends ScriptServer
     public CarpetScriptServer(MinecraftServer server)
     {
         this.server = server;
+        this.worldWrites = new WorldWriteQueue(server);
         init();
     }
 
     private void init()
     {
         events = new CarpetEventServer(this);
+        expressionCache = new ExpressionCache();
         modules = new HashMap<>();
         unloadableModules = new HashSet<>();
         tickStart = 0L;
@@ -354,6 +358,7 @@ public class CarpetScriptServer extends ScriptServer
         CarpetScriptHost host = modules.remove(name);
         events.removeAllHostEvents(host);
         host.onClose();
+        ZipFileSystems.closeFor(name);
         if (host.hasCommand)
         {
             Vanilla.CommandDispatcher_unregisterCommand(server.getCommands().getDispatcher(), name);
@@ -412,6 +417,9 @@ public class CarpetScriptServer extends ScriptServer
             host.tick();
         }
         token.run();
+        token = Carpet.startProfilerSection("Scarpet task writes");
+        worldWrites.tick();
+        token.run();
     }
 
     public void onClose()
@@ -422,6 +430,10 @@ public class CarpetScriptServer extends ScriptServer
             host.onClose();
             events.removeAllHostEvents(host);
         }
+        worldWrites.flush();
+        FileWriteQueue.flush();
+        LogFiles.closeAll();
+        ZipFileSystems.closeAll();
         stopAll = true;
     }
 
@@ -449,12 +461,19 @@ public class CarpetScriptServer extends ScriptServer
         return server.getWorldPath(LevelResource.ROOT).resolve("scripts/" + suffix);
     }
 
+    @Override
+    public boolean isStopped()
+    {
+        return stopAll;
+    }
+
     public void onPlayerLoggedOut(ServerPlayer player, Component reason)
     {
         if (PLAYER_DISCONNECTS.isNeeded())
         {
             PLAYER_DISCONNECTS.onPlayerMessage(player, reason.getContents().toString());
         }
+        CarpetEventServer.Event.forgetPlayer(player.getName().getString());
     }
 
     private record TransferData(boolean perUser, Predicate<CommandSourceStack> commandValidator,
@@ -0,0 +1,42 @@
+package carpet.script;
+
+import carpet.script.value.Value;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+
+/**
+ * Template for {@link ScriptCompiler}, never loaded directly. Each compiled call site gets its own hidden copy of this
+ * class with the call target and its arguments bound as static constants, so the JIT sees a monomorphic call.
+ */
+final class CompiledFunctionCall implements LazyValue
+{
+    private static final Fluff.ILazyFunction FUNCTION;
+    private static final Expression EXPRESSION;
+    private static final Tokenizer.Token TOKEN;
+    private static final List<LazyValue> PARAMS;
+
+    static
+    {
+        try
+        {
+            List<?> data = MethodHandles.classData(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME, List.class);
+            FUNCTION = (Fluff.ILazyFunction) data.get(0);
+            EXPRESSION = (Expression) data.get(1);
+            TOKEN = (Tokenizer.Token) data.get(2);
+            @SuppressWarnings("unchecked") List<LazyValue> params = (List<LazyValue>) data.get(3);
+            PARAMS = params;
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public Value evalValue(Context c, Context.Type type)
+    {
+        return FUNCTION.lazyEval(c, type, EXPRESSION, TOKEN, PARAMS).evalValue(c, type);
+    }
+}
@@ -0,0 +1,43 @@
+package carpet.script;
+
+import carpet.script.value.Value;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+
+/**
+ * Template for {@link ScriptCompiler}, never loaded directly. Same as {@link CompiledFunctionCall}, but for unary and
+ * binary operators, which take their operands directly.
+ */
+final class CompiledOperatorCall implements LazyValue
+{
+    private static final Fluff.ILazyOperator OPERATOR;
+    private static final Expression EXPRESSION;
+    private static final Tokenizer.Token TOKEN;
+    private static final LazyValue LEFT;
+    private static final LazyValue RIGHT;
+
+    static
+    {
+        try
+        {
+            List<?> data = MethodHandles.classData(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME, List.class);
+            OPERATOR = (Fluff.ILazyOperator) data.get(0);
+            EXPRESSION = (Expression) data.get(1);
+            TOKEN = (Tokenizer.Token) data.get(2);
+            LEFT = (LazyValue) data.get(3);
+            RIGHT = data.size() > 4 ? (LazyValue) data.get(4) : null;
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public Value evalValue(Context c, Context.Type type)
+    {
+        return OPERATOR.lazyEval(c, type, EXPRESSION, TOKEN, LEFT, RIGHT).evalValue(c, type);
+    }
+}
@@ -4,7 +4,12 @@ import carpet.script.exception.InternalExpressionException;
 import carpet.script.value.ThreadValue;
 import carpet.script.value.Value;
 
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -29,6 +34,13 @@ public class Context
 
     public Map<String, LazyValue> variables = new HashMap<>();
 
+    /**
+     * Local variable layout of the function this frame executes, if any. Names known to the scope are stored
+     * in {@link #slots}, anything else (dynamic names via var(), top level code) falls back to {@link #variables}
+     */
+    Scope scope = null;
+    LazyValue[] slots = null;
+
     public final ScriptHost host;
 
     private ThreadValue threadContext = null;
@@ -40,43 +52,122 @@ public class Context
 
     public LazyValue getVariable(String name)
     {
+        if (scope != null)
+        {
+            int slot = scope.slotOf(name);
+            if (slot >= 0)
+            {
+                return slots[slot];
+            }
+        }
         return variables.get(name);
     }
 
     public void setVariable(String name, LazyValue lv)
     {
+        if (scope != null)
+        {
+            int slot = scope.slotOf(name);
+            if (slot >= 0)
+            {
+                slots[slot] = lv;
+                return;
+            }
+        }
         variables.put(name, lv);
     }
 
+    /**
+     * Sets a local variable straight in its slot, as assigned by the scope of this frame
+     */
+    public void setLocal(int slot, LazyValue lv)
+    {
+        slots[slot] = lv;
+    }
+
     public void delVariable(String variable)
     {
+        if (scope != null)
+        {
+            int slot = scope.slotOf(variable);
+            if (slot >= 0)
+            {
+                slots[slot] = null;
+                return;
+            }
+        }
         variables.remove(variable);
     }
 
     public void removeVariablesMatching(String varname)
     {
+        if (scope != null)
+        {
+            for (int i = 0; i < slots.length; i++)
+            {
+                if (scope.names.get(i).startsWith(varname))
+                {
+                    slots[i] = null;
+                }
+            }
+        }
         variables.entrySet().removeIf(e -> e.getKey().startsWith(varname));
     }
 
     public Context with(String variable, LazyValue lv)
     {
-        variables.put(variable, lv);
+        setVariable(variable, lv);
         return this;
     }
 
     public Set<String> getAllVariableNames()
     {
-        return variables.keySet();
+        if (scope == null)
+        {
+            return variables.keySet();
+        }
+        Set<String> names = new HashSet<>(variables.keySet());
+        for (int i = 0; i < slots.length; i++)
+        {
+            if (slots[i] != null)
+            {
+                names.add(scope.names.get(i));
+            }
+        }
+        return names;
     }
 
     public Context recreate()
+    {
+        return recreate(null);
+    }
+
+    /**
+     * Creates a fresh frame for executing a function with a given local variable layout
+     */
+    public Context recreate(Scope functionScope)
     {
         Context ctx = duplicate();
         ctx.threadContext = threadContext;
+        if (functionScope != null)
+        {
+            ctx.scope = functionScope;
+            ctx.slots = new LazyValue[functionScope.size()];
+        }
         ctx.initialize();
         return ctx;
     }
 
+    /**
+     * Makes this context see and modify the same local variables as the other one
+     */
+    public void shareVariablesWith(Context other)
+    {
+        variables = other.variables;
+        scope = other.scope;
+        slots = other.slots;
+    }
+
     public void setThreadContext(ThreadValue callingThread)
     {
         this.threadContext = callingThread;
@@ -90,9 +181,9 @@ public class Context
     protected void initialize()
     {
         //special variables for second order functions so we don't need to check them all the time
-        variables.put("_", (c, t) -> Value.ZERO);
-        variables.put("_i", (c, t) -> Value.ZERO);
-        variables.put("_a", (c, t) -> Value.ZERO);
+        setVariable("_", (c, t) -> Value.ZERO);
+        setVariable("_i", (c, t) -> Value.ZERO);
+        setVariable("_a", (c, t) -> Value.ZERO);
     }
 
     public Context duplicate()
@@ -110,6 +201,52 @@ public class Context
         return host.scriptServer();
     }
 
+    /**
+     * Compile time assignment of local variable names of a function body to frame slots
+     */
+    public static class Scope
+    {
+        private final Object2IntOpenHashMap<String> slotsByName = new Object2IntOpenHashMap<>();
+        private final List<String> names = new ArrayList<>();
+        boolean parallelSafe = false;
+
+        public Scope()
+        {
+            slotsByName.defaultReturnValue(-1);
+        }
+
+        public int slotOf(String name)
+        {
+            return slotsByName.getInt(name);
+        }
+
+        public int register(String name)
+        {
+            int slot = slotsByName.getInt(name);
+            if (slot < 0)
+            {
+                slot = names.size();
+                names.add(name);
+                slotsByName.put(name, slot);
+            }
+            return slot;
+        }
+
+        public int size()
+        {
+            return names.size();
+        }
+
+        /**
+         * Whether the function body only uses pure built-ins, control flow and its own locals,
+         * so calls to it can run on several threads at once
+         */
+        public boolean isParallelSafe()
+        {
+            return parallelSafe;
+        }
+    }
+
     /**
      * immutable context only for reason on reporting access violations in evaluating expressions in optimizization
      * mode detecting any potential violations that may happen on the way
@@ -151,6 +288,12 @@ public class Context
             badProgrammer();
         }
 
+        @Override
+        public void setLocal(int slot, LazyValue lv)
+        {
+            badProgrammer();
+        }
+
         @Override
         public void delVariable(String variable)
         {
@@ -178,12 +321,18 @@ public class Context
         }
 
         @Override
-        public Context recreate()
+        public Context recreate(Scope functionScope)
         {
             badProgrammer();
             return null;
         }
 
+        @Override
+        public void shareVariablesWith(Context other)
+        {
+            badProgrammer();
+        }
+
         @Override
         protected void initialize()
         {
@@ -28,6 +28,7 @@ import carpet.script.language.Loops;
 import carpet.script.language.Operators;
 import carpet.script.language.Sys;
 import carpet.script.language.Threading;
+import carpet.script.value.BooleanValue;
 import carpet.script.value.FunctionValue;
 import carpet.script.value.NumericValue;
 import carpet.script.value.StringValue;
@@ -36,11 +37,13 @@ import it.unimi.dsi.fastutil.Stack;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -51,6 +54,7 @@ import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
 import java.util.function.LongBinaryOperator;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 public class Expression
@@ -91,6 +95,18 @@ public class Expression
      */
     private LazyValue ast = null;
 
+    /**
+     * Local variable layouts of function definitions, keyed by their '->' token
+     */
+    private final Map<Tokenizer.Token, Context.Scope> functionScopes = new Reference2ObjectOpenHashMap<>();
+
+    /**
+     * Number of calls after which user function bodies are compiled, if compilation is enabled
+     */
+    private static final int HOT_FUNCTION_CALLS = 1000;
+    private boolean compileHotFunctions = false;
+    private boolean compilationDebugging = false;
+
     /**
      * script specific operatos and built-in functions
      */
@@ -754,7 +770,7 @@ public class Expression
             contextValues = null;
         }
 
-        FunctionValue result = new FunctionValue(expr, token, name, code, arguments, varArgs, contextValues);
+        FunctionValue result = new FunctionValue(expr, token, name, code, arguments, varArgs, contextValues, expr.functionScopes.get(token));
         // do not store lambda definitions
         if (!name.equals("_"))
         {
@@ -820,6 +836,18 @@ public class Expression
         }
     }
 
+    /**
+     * Assigns to the variable the target reads, straight into its frame slot if the target is a resolved local
+     */
+    public void setAnyVariable(Context c, LazyValue target, String name, LazyValue lv)
+    {
+        if (target instanceof VariableAccess variable && variable.assign(c, name, lv))
+        {
+            return;
+        }
+        setAnyVariable(c, name, lv);
+    }
+
     public LazyValue getOrSetAnyVariable(Context c, String name)
     {
         LazyValue variable;
@@ -841,6 +869,55 @@ public class Expression
         return variable;
     }
 
+    /**
+     * Variable access that, once resolved, goes straight to its frame slot when executed in a frame of the function
+     * it was compiled in, and falls back to name lookup otherwise (globals, top level code, dynamic frames)
+     */
+    private final class VariableAccess implements LazyValue
+    {
+        private final String name;
+        private Context.Scope scope = null;
+        private int slot = -1;
+
+        private VariableAccess(String name)
+        {
+            this.name = name;
+        }
+
+        private void resolveIn(Context.Scope functionScope)
+        {
+            if (functionScope != null && !name.startsWith("global_"))
+            {
+                scope = functionScope;
+                slot = functionScope.register(name);
+            }
+        }
+
+        @Override
+        public Value evalValue(Context c, Context.Type type)
+        {
+            if (c.scope == scope && scope != null)
+            {
+                LazyValue local = c.slots[slot];
+                if (local != null)
+                {
+                    return local.evalValue(c, type);
+                }
+            }
+            return getOrSetAnyVariable(c, name).evalValue(c, type);
+        }
+
+        private boolean assign(Context c, String assigned, LazyValue lv)
+        {
+            if (c.scope == scope && scope != null && name.equals(assigned))
+            {
+                c.slots[slot] = lv;
+                return true;
+            }
+            return false;
+        }
+    }
+
     public static final Expression none = new Expression("null");
 
     /**
@@ -1109,7 +1186,7 @@ public class Expression
                     }
                     else
                     {
-                        nodeStack.push(new ExpressionNode(((c, t) -> getOrSetAnyVariable(c, token.surface).evalValue(c, t)), Collections.emptyList(), token));
+                        nodeStack.push(new ExpressionNode(new VariableAccess(token.surface), Collections.emptyList(), token));
                     }
                 }
                 case FUNCTION -> {
@@ -1193,6 +1270,7 @@ public class Expression
         ExpressionNode root = RPNToParseTree(rpn, context);
         if (!Vanilla.ScriptServer_scriptOptimizations(((CarpetScriptServer)context.scriptServer()).server))
         {
+            resolveLocals(root, null);
             return root.op;
         }
 
@@ -1248,9 +1326,184 @@ public class Expression
                 }
             }
         }
+        resolveLocals(root, null);
+        compileHotFunctions = Vanilla.ScriptServer_scriptCompilation(((CarpetScriptServer)context.scriptServer()).server) && ScriptCompiler.isAvailable();
+        compilationDebugging = scriptsDebugging;
         return extractOp(optimizeOnlyContext, root, Context.Type.NONE);
     }
 
+    private static boolean isFunctionDefinition(ExpressionNode node)
+    {
+        return node.token.type == Tokenizer.Token.TokenType.OPERATOR && node.token.surface.equals("->")
+                && node.args.size() == 2 && node.args.get(0).token.type == Tokenizer.Token.TokenType.FUNCTION;
+    }
+
+    /**
+     * Assigns frame slots to local variables, opening a new scope for each function definition body.
+     * Signature arguments are resolved in the scope of the function they define
+     */
+    private void resolveLocals(ExpressionNode node, Context.Scope scope)
+    {
+        if (node.op instanceof VariableAccess variable)
+        {
+            variable.resolveIn(scope);
+            return;
+        }
+        if (isFunctionDefinition(node))
+        {
+            Context.Scope functionScope = functionScopes.computeIfAbsent(node.token, tok -> new Context.Scope());
+            resolveLocals(node.args.get(0), functionScope);
+            resolveLocals(node.args.get(1), functionScope);
+            functionScope.parallelSafe = isParallelSafe(node.args.get(1), scalarLocals(node));
+            return;
+        }
+        for (ExpressionNode arg : node.args)
+        {
+            resolveLocals(arg, scope);
+        }
+    }
+
+    private static final Set<String> PARALLEL_SAFE_CONTROL_FLOW = Set.of(
+            "if", "then", ";", "return", "break", "continue",
+            "map", "filter", "first", "all", "for", "reduce", "while", "loop", "c_for"
+    );
+    private static final Set<String> COMPOUND_ASSIGNMENTS = Set.of("+=", "-=", "*=", "/=");
+    private static final Set<String> FUSABLE_STAGES = Set.of("map", "filter");
+    private static final Set<String> STAGE_VARIABLES = Set.of("_", "_i");
+
+    /**
+     * Local variables of a function body that only ever get numbers, strings or null assigned to them. Compound
+     * assignments to anything else could append to a list or map shared with other calls, like the arguments,
+     * values captured with outer, or elements bound by loops, so only these are safe to use them on
+     */
+    private static Set<String> scalarLocals(ExpressionNode definition)
+    {
+        Set<String> scalar = new HashSet<>();
+        Set<String> other = new HashSet<>();
+        collectVariables(definition.args.get(0), other);
+        collectAssignments(definition.args.get(1), scalar, other);
+        scalar.removeAll(other);
+        scalar.removeIf(name -> name.startsWith("_") || name.startsWith("global_"));
+        return scalar;
+    }
+
+    private static void collectVariables(ExpressionNode node, Set<String> names)
+    {
+        if (node.token.type == Tokenizer.Token.TokenType.VARIABLE)
+        {
+            names.add(node.token.surface);
+        }
+        for (ExpressionNode arg : node.args)
+        {
+            collectVariables(arg, names);
+        }
+    }
+
+    private static void collectAssignments(ExpressionNode node, Set<String> scalar, Set<String> other)
+    {
+        if (node.token.type == Tokenizer.Token.TokenType.OPERATOR && node.token.surface.equals("=") && node.args.size() == 2)
+        {
+            ExpressionNode target = node.args.get(0);
+            if (target.token.type == Tokenizer.Token.TokenType.VARIABLE && isScalarConstant(node.args.get(1)))
+            {
+                scalar.add(target.token.surface);
+            }
+            else
+            {
+                collectVariables(target, other);
+            }
+        }
+        for (ExpressionNode arg : node.args)
+        {
+            collectAssignments(arg, scalar, other);
+        }
+    }
+
+    private static boolean isScalarConstant(ExpressionNode node)
+    {
+        if (!(node.op instanceof LazyValue.Constant constant))
+        {
+            return false;
+        }
+        Value value = constant.get();
+        return value instanceof NumericValue || value instanceof StringValue || value.isNull();
+    }
+
+    /**
+     * Checks if code can run concurrently, which is only the case if it calls nothing but pure built-ins and
+     * control flow, and only assigns to plain local variables. User function calls, impure (world, io, global state)
+     * built-ins, assignments to globals or container elements, and compound assignments to anything but
+     * {@link #scalarLocals} make it unsafe. With null scalarLocals, no assignments are allowed at all, so the code
+     * is pure.
+     */
+    private boolean isParallelSafe(ExpressionNode node, Set<String> scalarLocals)
+    {
+        Tokenizer.Token.TokenType type = node.token.type;
+        if (!type.isFunctional() || node.op instanceof LazyValue.Constant)
+        {
+            return true;
+        }
+        String symbol = node.token.surface;
+        Fluff.EvalNode operation = ((type == Tokenizer.Token.TokenType.FUNCTION) ? functions : operators).get(symbol);
+        if (operation == null)
+        {
+            return false;
+        }
+        if (symbol.equals("=") && node.args.size() == 2)
+        {
+            ExpressionNode target = node.args.get(0);
+            return scalarLocals != null && target.token.type == Tokenizer.Token.TokenType.VARIABLE && !target.token.surface.startsWith("global_")
+                    && isParallelSafe(node.args.get(1), scalarLocals);
+        }
+        if (COMPOUND_ASSIGNMENTS.contains(symbol) && node.args.size() == 2)
+        {
+            ExpressionNode target = node.args.get(0);
+            return scalarLocals != null && target.token.type == Tokenizer.Token.TokenType.VARIABLE && scalarLocals.contains(target.token.surface)
+                    && isParallelSafe(node.args.get(1), scalarLocals);
+        }
+        if (!operation.pure() && !PARALLEL_SAFE_CONTROL_FLOW.contains(symbol))
+        {
+            return false;
+        }
+        for (ExpressionNode arg : node.args)
+        {
+            if (!isParallelSafe(arg, scalarLocals))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a map or filter stage can be evaluated lazily by its consumer, so interleaved with the consumer's own
+     * code. That only gives the same results if the stage is pure and reads no variables besides the ones its loop
+     * binds, since the consumer could change any other variable between elements
+     */
+    private boolean isFusable(ExpressionNode stage)
+    {
+        if (!isParallelSafe(stage, null))
+        {
+            return false;
+        }
+        Set<String> read = new HashSet<>();
+        collectVariables(stage, read);
+        return STAGE_VARIABLES.containsAll(read);
+    }
+
+    /**
+     * Wraps the expression of a fusable map or filter call in {@link LazyValue.Pure}, which lets the stage be evaluated
+     * lazily by its consumer. Both the interpreter and the compiler go through here, so compiled functions fuse the same
+     */
+    private List<LazyValue> markFusableStage(ExpressionNode node, List<LazyValue> params)
+    {
+        if (FUSABLE_STAGES.contains(node.token.surface) && params.size() == 2 && isFusable(node.args.get(1)))
+        {
+            params.set(1, new LazyValue.Pure(params.get(1)));
+        }
+        return params;
+    }
+
     private int treeSize(ExpressionNode node)
     {
         return node.op instanceof LazyValue.ContextFreeLazyValue ? 1 : node.args.stream().mapToInt(this::treeSize).sum() + 1;
@@ -1501,15 +1754,24 @@ public class Expression
                 Context.Type requestedType = op.staticType(expectedType);
                 LazyValue arg = extractOp(ctx, node.args.get(0), requestedType);
                 LazyValue arh = extractOp(ctx, node.args.get(1), requestedType);
-                return (c, t) -> op.lazyEval(c, t, this, token, arg, arh).evalValue(c, t);
+                if (op instanceof Fluff.IOperator eagerOp)
+                {
+                    return eagerBinaryOperation(eagerOp, token, node.args.get(1), arg, arh);
+                }
+                if (compileHotFunctions && isFunctionDefinition(node))
+                {
+                    arh = new HotFunctionBody(ctx, node.args.get(1), requestedType, arh);
+                }
+                LazyValue body = arh;
+                return (c, t) -> op.lazyEval(c, t, this, token, arg, body).evalValue(c, t);
             }
             case VARIABLE:
-                return (c, t) -> getOrSetAnyVariable(c, token.surface).evalValue(c, t);
+                return node.op instanceof VariableAccess ? node.op : (c, t) -> getOrSetAnyVariable(c, token.surface).evalValue(c, t);
             case FUNCTION:
             {
                 ILazyFunction f = functions.get(token.surface);
                 Context.Type requestedType = f.staticType(expectedType);
-                List<LazyValue> params = node.args.stream().map(n -> extractOp(ctx, n, requestedType)).collect(Collectors.toList());
+                List<LazyValue> params = markFusableStage(node, node.args.stream().map(n -> extractOp(ctx, n, requestedType)).collect(Collectors.toCollection(ArrayList::new)));
                 return (c, t) -> f.lazyEval(c, t, this, token, params).evalValue(c, t);
             }
             case CONSTANT:
@@ -1520,6 +1782,143 @@ public class Expression
         }
     }
 
+    /**
+     * Evaluates non-lazy binary operators in place, without going through a temporary {@link LazyValue} for each
+     * evaluation, and with primitive arithmetic if the right hand side is a numeric constant. Both sides being numeric
+     * constants never gets here, the optimizer folds those already.
+     */
+    private LazyValue eagerBinaryOperation(Fluff.IOperator op, Tokenizer.Token token, ExpressionNode right, LazyValue arg, LazyValue arh)
+    {
+        if (right.token.type.isConstant() && right.op instanceof LazyValue.Constant constant
+                && constant.get().getClass() == NumericValue.class)
+        {
+            NumericValue number = (NumericValue) constant.get();
+            UnaryOperator<Value> operation = switch (token.surface)
+            {
+                case "+" -> v -> v.getClass() == NumericValue.class ? ((NumericValue) v).addNumeric(number) : v.add(number);
+                case "-" -> v -> v.getClass() == NumericValue.class ? ((NumericValue) v).subtractNumeric(number) : v.subtract(number);
+                case "*" -> v -> v.getClass() == NumericValue.class ? ((NumericValue) v).multiplyNumeric(number) : v.multiply(number);
+                case "<" -> v -> BooleanValue.of(compareToNumber(v, number) < 0);
+                case "<=" -> v -> BooleanValue.of(compareToNumber(v, number) <= 0);
+                case ">" -> v -> BooleanValue.of(compareToNumber(v, number) > 0);
+                case ">=" -> v -> BooleanValue.of(compareToNumber(v, number) >= 0);
+                default -> null;
+            };
+            if (operation != null)
+            {
+                return (c, t) -> {
+                    try
+                    {
+                        return operation.apply(arg.evalValue(c, Context.Type.NONE));
+                    }
+                    catch (RuntimeException exc)
+                    {
+                        throw handleCodeException(c, exc, this, token);
+                    }
+                };
+            }
+        }
+        return (c, t) -> {
+            try
+            {
+                return op.eval(arg.evalValue(c, Context.Type.NONE), arh.evalValue(c, Context.Type.NONE));
+            }
+            catch (RuntimeException exc)
+            {
+                throw handleCodeException(c, exc, this, token);
+            }
+        };
+    }
+
+    private static int compareToNumber(Value v, NumericValue number)
+    {
+        return v.getClass() == NumericValue.class ? ((NumericValue) v).compareNumeric(number) : v.compareTo(number);
+    }
+
+    /**
+     * Same as {@link #extractOp}, but turns every call site into its own class via {@link ScriptCompiler}.
+     * Nested function definitions and anything that fails to compile is left to the tree interpreter.
+     */
+    private LazyValue compileOp(Context ctx, ExpressionNode node, Context.Type expectedType)
+    {
+        if (node.op instanceof LazyValue.ContextFreeLazyValue || isFunctionDefinition(node))
+        {
+            return extractOp(ctx, node, expectedType);
+        }
+        Tokenizer.Token token = node.token;
+        LazyValue compiled = switch (token.type)
+        {
+            case UNARY_OPERATOR -> {
+                ILazyOperator op = operators.get(token.surface);
+                Context.Type requestedType = op.staticType(expectedType);
+                yield ScriptCompiler.operatorCall(op, this, token, compileOp(ctx, node.args.get(0), requestedType), null);
+            }
+            case OPERATOR -> {
+                ILazyOperator op = operators.get(token.surface);
+                Context.Type requestedType = op.staticType(expectedType);
+                LazyValue left = compileOp(ctx, node.args.get(0), requestedType);
+                LazyValue right = compileOp(ctx, node.args.get(1), requestedType);
+                yield op instanceof Fluff.IOperator eagerOp
+                        ? eagerBinaryOperation(eagerOp, token, node.args.get(1), left, right)
+                        : ScriptCompiler.operatorCall(op, this, token, left, right);
+            }
+            case FUNCTION -> {
+                ILazyFunction f = functions.get(token.surface);
+                Context.Type requestedType = f.staticType(expectedType);
+                List<LazyValue> params = markFusableStage(node, node.args.stream().map(n -> compileOp(ctx, n, requestedType)).collect(Collectors.toCollection(ArrayList::new)));
+                yield ScriptCompiler.functionCall(f, this, token, params);
+            }
+            default -> null;
+        };
+        return compiled != null ? compiled : extractOp(ctx, node, expectedType);
+    }
+
+    /**
+     * Body of a user defined function that runs interpreted until it gets called often enough to be worth compiling
+     */
+    private final class HotFunctionBody implements LazyValue
+    {
+        private Context ctx;
+        private ExpressionNode node;
+        private final Context.Type type;
+        private volatile LazyValue code;
+        private int calls = 0;
+
+        private HotFunctionBody(Context ctx, ExpressionNode node, Context.Type type, LazyValue interpreted)
+        {
+            this.ctx = ctx;
+            this.node = node;
+            this.type = type;
+            this.code = interpreted;
+        }
+
+        @Override
+        public Value evalValue(Context c, Context.Type t)
+        {
+            if (node != null && ++calls >= HOT_FUNCTION_CALLS)
+            {
+                compile();
+            }
+            return code.evalValue(c, t);
+        }
+
+        private synchronized void compile()
+        {
+            if (node == null)
+            {
+                return;
+            }
+            code = compileOp(ctx, node, type);
+            if (compilationDebugging)
+            {
+                CarpetScriptServer.LOG.info("Compiled function body of " + treeSize(node) + " nodes at line " + (node.token.lineno + 1) + " in " + getModuleName());
+            }
+            // no longer needed, let them go
+            node = null;
+            ctx = null;
+        }
+    }
+
     private void validate(Context c, List<Tokenizer.Token> rpn)
     {
         /*-
@@ -0,0 +1,87 @@
+package carpet.script;
+
+import carpet.script.external.Carpet;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.core.BlockPos;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU of expressions submitted through /script run, scan and fill, so repeated invocations
+ * of the same code (from command blocks, functions or {@code run()}) skip tokenizing, parsing and optimizing.
+ * Entries are keyed by the executing host and the expression text, go stale once the host
+ * defines or removes functions or global variables, and are dropped when the host closes.
+ * Nothing is cached while extensions add their own functions, since these get the source and origin
+ * of the expression they are registered on.
+ */
+public class ExpressionCache
+{
+    public static final int CAPACITY = 256;
+
+    private record Key(ScriptHost host, String code) {}
+
+    private record Entry(Expression expression, long generation) {}
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest)
+        {
+            return size() > CAPACITY;
+        }
+    };
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Returns a parsed expression for the code, registering all the API functions on a fresh one for the source
+     * and origin if there is no valid cached copy.
+     */
+    public synchronized Expression get(ScriptHost host, String code, CommandSourceStack source, BlockPos origin)
+    {
+        if (Carpet.extensionsAddScarpetApi())
+        {
+            misses++;
+            return CarpetExpression.createExpression(host.main, code, source, origin);
+        }
+        Key key = new Key(host, code);
+        long generation = host.codeGeneration();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.generation() == generation)
+        {
+            hits++;
+            return entry.expression();
+        }
+        misses++;
+        Expression expression = CarpetExpression.createExpression(host.main, code, source, origin);
+        entries.put(key, new Entry(expression, generation));
+        return expression;
+    }
+
+    public synchronized void invalidate(ScriptHost host)
+    {
+        entries.keySet().removeIf(k -> k.host() == host || k.host().parent == host);
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    public synchronized long hits()
+    {
+        return hits;
+    }
+
+    public synchronized long misses()
+    {
+        return misses;
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+}
@@ -0,0 +1,141 @@
+package carpet.script;
+
+import carpet.script.argument.FileArgument;
+import carpet.script.exception.ThrowStatement;
+import com.google.common.collect.MapMaker;
+import net.minecraft.nbt.Tag;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Saves of app data and nbt files, written in the background so the server thread never waits for the disk.
+ * Only the latest tag of each file is kept while it waits to be written, so apps saving the same file every few ticks
+ * write it once per disk round trip, and reads of that file get the pending tag rather than what's on disk.
+ * Each file also has its own lock, taken by everything reading or writing it. Locks are only weakly held, so a file's
+ * lock goes away once no read, write or queued save is using it, rather than staying around for every path ever touched.
+ */
+public final class FileWriteQueue
+{
+    private static final Map<Path, Object> locks = new MapMaker().weakValues().makeMap();
+    // guarded by itself
+    private static final Map<Path, Tag> pending = new LinkedHashMap<>();
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(Thread.ofPlatform().daemon().name("Scarpet file writer").factory());
+
+    private FileWriteQueue()
+    {
+    }
+
+    private static Path key(Path path)
+    {
+        return path.toAbsolutePath().normalize();
+    }
+
+    public static Object lockFor(Path path)
+    {
+        return locks.computeIfAbsent(key(path), p -> new Object());
+    }
+
+    /**
+     * Queues the tag to be written to the file, replacing the previous one if that wasn't written yet
+     */
+    public static void writeTag(Tag tag, Path path)
+    {
+        Path key = key(path);
+        Tag copy = tag.copy();
+        boolean queued;
+        synchronized (pending)
+        {
+            queued = pending.put(key, copy) != null;
+        }
+        if (!queued)
+        {
+            writer.execute(() -> write(key));
+        }
+    }
+
+    /**
+     * Tag still waiting to be written to the file, if any
+     */
+    @Nullable
+    public static Tag pendingTag(Path path)
+    {
+        Tag tag;
+        synchronized (pending)
+        {
+            tag = pending.get(key(path));
+        }
+        return tag == null ? null : tag.copy();
+    }
+
+    /**
+     * Drops the pending write to the file, if any, returns whether there was one
+     */
+    public static boolean cancel(Path path)
+    {
+        synchronized (pending)
+        {
+            return pending.remove(key(path)) != null;
+        }
+    }
+
+    private static void write(Path path)
+    {
+        synchronized (lockFor(path))
+        {
+            Tag tag;
+            synchronized (pending)
+            {
+                tag = pending.remove(path);
+            }
+            if (tag == null)
+            {
+                return; // already written by flush, or the file got removed
+            }
+            try
+            {
+                Files.createDirectories(path.getParent());
+                FileArgument.writeTagDisk(tag, path, false);
+            }
+            catch (IOException | ThrowStatement e)
+            {
+                CarpetScriptServer.LOG.error("Failed to save " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Writes everything that is pending right away, used when the server shuts down
+     */
+    public static void flush()
+    {
+        List<Path> paths;
+        synchronized (pending)
+        {
+            paths = new ArrayList<>(pending.keySet());
+        }
+        paths.forEach(FileWriteQueue::write);
+        try
+        {
+            // and wait for the one the writer might be in the middle of
+            writer.submit(() -> {}).get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            CarpetScriptServer.LOG.error("Failed to finish saving files", e);
+        }
+    }
+}
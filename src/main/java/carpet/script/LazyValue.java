@@ -39,6 +39,19 @@ public interface LazyValue
     }
 
 
+    /**
+     * Code that doesn't assign anything, only calls pure functions and only reads the variables bound by its loop,
+     * so it can be evaluated later, or interleaved with other code, with the same result
+     */
+    record Pure(LazyValue code) implements LazyValue
+    {
+        @Override
+        public Value evalValue(Context c, Context.Type type)
+        {
+            return code.evalValue(c, type);
+        }
+    }
+
     class Constant implements ContextFreeLazyValue
     {
         Value result;
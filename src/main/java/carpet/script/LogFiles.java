@@ -0,0 +1,394 @@
+package carpet.script;
+
+import carpet.script.exception.ThrowStatement;
+import carpet.script.exception.Throwables;
+import carpet.script.value.LazyListValue;
+import carpet.script.value.Value;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Append only {@code log} files, storing one JSON record per line. Files stay open between writes with new records
+ * gathered in a buffer, which a background thread writes out and syncs to disk every second. Files that were not
+ * written to for a minute get closed. Reading goes through the file a chunk at a time, so logs of any size can be
+ * iterated over without loading them whole.
+ */
+public final class LogFiles
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final class Log
+    {
+        final Path path;
+        final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long lastWrite = System.nanoTime();
+        boolean unsynced;
+        // set once the log is taken out of the open files, writers that still got it need to look it up again
+        boolean closed;
+
+        Log(Path path, FileChannel channel)
+        {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        void append(byte[] bytes) throws IOException
+        {
+            if (bytes.length > buffer.remaining())
+            {
+                drain();
+            }
+            if (bytes.length > buffer.capacity())
+            {
+                ByteBuffer large = ByteBuffer.wrap(bytes);
+                while (large.hasRemaining())
+                {
+                    channel.write(large);
+                }
+            }
+            else
+            {
+                buffer.put(bytes);
+            }
+            lastWrite = System.nanoTime();
+            unsynced = true;
+        }
+
+        void drain() throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    // guarded by itself, only held to look logs up, each log is guarded by itself while writing to it,
+    // and a log lock can be held while taking this one, but never the other way around
+    private static final Map<Path, Log> open = new HashMap<>();
+    private static ScheduledExecutorService syncer;
+
+    private LogFiles()
+    {
+    }
+
+    private static Path key(Path path)
+    {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Adds the records at the end of the file, each in its own line
+     */
+    public static void append(Path path, List<String> records) throws IOException
+    {
+        StringBuilder lines = new StringBuilder();
+        for (String record : records)
+        {
+            lines.append(record).append('\n');
+        }
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+        Path key = key(path);
+        while (true)
+        {
+            Log log;
+            synchronized (open)
+            {
+                log = open.get(key);
+            }
+            if (log == null)
+            {
+                log = openLog(key);
+            }
+            synchronized (log)
+            {
+                if (!log.closed)
+                {
+                    log.append(bytes);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static Log openLog(Path key) throws IOException
+    {
+        Files.createDirectories(key.getParent());
+        Log created = new Log(key, FileChannel.open(key, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+        Log existing;
+        synchronized (open)
+        {
+            existing = open.putIfAbsent(key, created);
+            if (existing == null && syncer == null)
+            {
+                syncer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("Scarpet log sync").factory());
+                syncer.scheduleWithFixedDelay(LogFiles::sync, 1, 1, TimeUnit.SECONDS);
+            }
+        }
+        if (existing != null)
+        {
+            // opened by another thread in the meantime
+            created.channel.close();
+            return existing;
+        }
+        return created;
+    }
+
+    /**
+     * Writes out the buffered records of the file, so reading it sees all of them
+     */
+    public static void flush(Path path) throws IOException
+    {
+        Log log;
+        synchronized (open)
+        {
+            log = open.get(key(path));
+        }
+        if (log != null)
+        {
+            synchronized (log)
+            {
+                if (!log.closed)
+                {
+                    log.drain();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes out and closes the file, before it gets removed
+     */
+    public static void close(Path path) throws IOException
+    {
+        Log log;
+        synchronized (open)
+        {
+            log = open.remove(key(path));
+        }
+        if (log == null)
+        {
+            return;
+        }
+        synchronized (log)
+        {
+            log.closed = true;
+            try
+            {
+                log.drain();
+            }
+            finally
+            {
+                log.channel.close();
+            }
+        }
+    }
+
+    private static void sync()
+    {
+        List<Log> logs;
+        synchronized (open)
+        {
+            logs = new ArrayList<>(open.values());
+        }
+        List<Log> toSync = new ArrayList<>();
+        List<Log> toClose = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Log log : logs)
+        {
+            synchronized (log)
+            {
+                if (log.closed)
+                {
+                    continue;
+                }
+                try
+                {
+                    log.drain();
+                }
+                catch (IOException e)
+                {
+                    CarpetScriptServer.LOG.error("Failed to write to a log file", e);
+                }
+                if (log.unsynced)
+                {
+                    log.unsynced = false;
+                    toSync.add(log);
+                }
+                else if (now - log.lastWrite > IDLE_NANOS)
+                {
+                    log.closed = true;
+                    synchronized (open)
+                    {
+                        open.remove(log.path, log);
+                    }
+                    toClose.add(log);
+                }
+            }
+        }
+        // syncing can take a while, without holding up the apps writing in the meantime
+        for (Log log : toSync)
+        {
+            try
+            {
+                log.channel.force(false);
+            }
+            catch (IOException e)
+            {
+                // closed while syncing, closing writes everything out anyways
+            }
+        }
+        for (Log log : toClose)
+        {
+            try
+            {
+                log.channel.close();
+            }
+            catch (IOException e)
+            {
+                CarpetScriptServer.LOG.error("Failed to close a log file", e);
+            }
+        }
+    }
+
+    /**
+     * Writes out and closes all the files, used when the server shuts down
+     */
+    public static void closeAll()
+    {
+        List<Path> paths;
+        synchronized (open)
+        {
+            paths = new ArrayList<>(open.keySet());
+        }
+        for (Path path : paths)
+        {
+            try
+            {
+                close(path);
+            }
+            catch (IOException e)
+            {
+                CarpetScriptServer.LOG.error("Failed to close log file " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Lazy list of records in the first {@code end} bytes of the file, parsed as they are reached
+     */
+    public static LazyListValue reader(Path path, long end, Function<String, Value> parser)
+    {
+        return new LazyListValue()
+        {
+            private long position;
+            private final Deque<Value> records = new ArrayDeque<>();
+
+            private void readRecords()
+            {
+                int size = BUFFER_SIZE;
+                while (records.isEmpty() && position < end)
+                {
+                    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, end - position));
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+                    {
+                        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0)
+                        {
+                            // reading until the chunk is full or the file ends
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        CarpetScriptServer.LOG.warn("IOException when reading log file", e);
+                        throw new ThrowStatement("Failed to read log file " + path, Throwables.IO_EXCEPTION);
+                    }
+                    int length = buffer.position();
+                    if (length == 0)
+                    {
+                        position = end; // file got shorter in the meantime
+                        return;
+                    }
+                    byte[] bytes = buffer.array();
+                    int lineEnd = length - 1;
+                    while (lineEnd >= 0 && bytes[lineEnd] != '\n')
+                    {
+                        lineEnd--;
+                    }
+                    int consumed = lineEnd + 1;
+                    if (lineEnd < 0)
+                    {
+                        if (position + length < end)
+                        {
+                            size *= 2; // record longer than the chunk
+                            continue;
+                        }
+                        lineEnd = length; // last record, without a line end
+                        consumed = length;
+                    }
+                    for (String line : new String(bytes, 0, lineEnd, StandardCharsets.UTF_8).split("\n"))
+                    {
+                        if (!line.isBlank())
+                        {
+                            records.add(parse(line));
+                        }
+                    }
+                    position += consumed;
+                }
+            }
+
+            private Value parse(String line)
+            {
+                try
+                {
+                    return parser.apply(line);
+                }
+                catch (JsonParseException e)
+                {
+                    throw new ThrowStatement("Invalid record in log file " + path + ": " + line, Throwables.JSON_ERROR);
+                }
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                readRecords();
+                return !records.isEmpty();
+            }
+
+            @Override
+            public Value next()
+            {
+                readRecords();
+                return records.isEmpty() ? Value.NULL : records.poll();
+            }
+
+            @Override
+            public void reset()
+            {
+                position = 0;
+                records.clear();
+            }
+        };
+    }
+}
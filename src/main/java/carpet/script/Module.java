@@ -90,16 +90,28 @@ public record Module(String name, String code, boolean library)
     public static Tag getData(Module module, ScriptServer scriptServer)
     {
         Path dataFile = resolveResource(module, scriptServer);
-        if (dataFile == null || !Files.exists(dataFile) || !(Files.isRegularFile(dataFile)))
+        if (dataFile == null)
         {
             return null;
         }
-        synchronized (FileArgument.writeIOSync)
+        synchronized (FileWriteQueue.lockFor(dataFile))
         {
+            Tag pending = FileWriteQueue.pendingTag(dataFile);
+            if (pending != null)
+            {
+                return pending;
+            }
+            if (!Files.exists(dataFile) || !(Files.isRegularFile(dataFile)))
+            {
+                return null;
+            }
             return FileArgument.readTag(dataFile);
         }
     }
 
+    /**
+     * Queues the app state to be saved in the background, see {@link FileWriteQueue}
+     */
     public static void saveData(Module module, Tag globalState, ScriptServer scriptServer)
     {
         Path dataFile = resolveResource(module, scriptServer);
@@ -107,21 +119,7 @@ public record Module(String name, String code, boolean library)
         {
             return;
         }
-        if (!Files.exists(dataFile.getParent()))
-        {
-            try
-            {
-                Files.createDirectories(dataFile.getParent());
-            }
-            catch (IOException e)
-            {
-                throw new IllegalStateException(e);
-            }
-        }
-        synchronized (FileArgument.writeIOSync)
-        {
-            FileArgument.writeTagDisk(globalState, dataFile, false);
-        }
+        FileWriteQueue.writeTag(globalState, dataFile);
     }
 
     private static Path resolveResource(Module module, ScriptServer scriptServer)
@@ -412,6 +412,9 @@ public class ScriptCommand
                 Carpet.Messenger_message(source, "w  - " + c.function.getString() + (c.host == null ? "" : " (from " + c.host + ")"));
             }
         }
+        Carpet.Messenger_message(source, "w Scheduled calls: ", "wb " + scriptServer.events.scheduledCallCount());
+        scriptServer.events.scheduledCallsByHost().forEach((app, count) ->
+                Carpet.Messenger_message(source, "w  - " + app + ": " + count));
         return 1;
     }
 
@@ -531,7 +534,7 @@ public class ScriptCommand
         CommandSourceStack source = context.getSource();
         CarpetScriptHost host = getHost(context);
         return handleCall(source, host, () -> {
-            CarpetExpression ex = new CarpetExpression(host.main, expr, source, new BlockPos(0, 0, 0));
+            CarpetExpression ex = new CarpetExpression(host.scriptServer().expressionCache.get(host, expr, source, new BlockPos(0, 0, 0)), source, new BlockPos(0, 0, 0));
             return ex.scriptRunCommand(host, BlockPos.containing(source.getPosition()));
         });
     }
@@ -541,7 +544,7 @@ public class ScriptCommand
         CommandSourceStack source = context.getSource();
         CarpetScriptHost host = getHost(context);
         BoundingBox area = BoundingBox.fromCorners(a, b);
-        CarpetExpression cexpr = new CarpetExpression(host.main, expr, source, origin);
+        CarpetExpression cexpr = new CarpetExpression(host.scriptServer().expressionCache.get(host, expr, source, origin), source, origin);
         int int_1 = area.getXSpan() * area.getYSpan() * area.getZSpan(); // X Y Z
         if (int_1 > Vanilla.MinecraftServer_getFillLimit(source.getServer()) )
         {
@@ -593,7 +596,7 @@ public class ScriptCommand
         CommandSourceStack source = context.getSource();
         CarpetScriptHost host = getHost(context);
         BoundingBox area = BoundingBox.fromCorners(a, b);
-        CarpetExpression cexpr = new CarpetExpression(host.main, expr, source, origin);
+        CarpetExpression cexpr = new CarpetExpression(host.scriptServer().expressionCache.get(host, expr, source, origin), source, origin);
         int int_1 = area.getXSpan() * area.getYSpan() * area.getZSpan();
         if (int_1 > Vanilla.MinecraftServer_getFillLimit(source.getServer()))
         {
@@ -0,0 +1,96 @@
+package carpet.script;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+
+/**
+ * Turns call sites of hot user functions into dedicated hidden classes, one per call site, with the called function
+ * and argument nodes bound as class constants. That turns the megamorphic chain of {@link LazyValue#evalValue}
+ * calls of the tree interpreter into monomorphic ones the JIT can inline.
+ * Hidden classes are not strongly tied to the loader, so they are unloaded with the apps that use them.
+ */
+public final class ScriptCompiler
+{
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType CONSTRUCTOR = MethodType.methodType(void.class);
+    @Nullable
+    private static final byte[] FUNCTION_TEMPLATE = readTemplate("CompiledFunctionCall.class");
+    @Nullable
+    private static final byte[] OPERATOR_TEMPLATE = readTemplate("CompiledOperatorCall.class");
+    private static boolean failureReported = false;
+
+    private ScriptCompiler()
+    {
+    }
+
+    @Nullable
+    private static byte[] readTemplate(String file)
+    {
+        try (InputStream stream = ScriptCompiler.class.getResourceAsStream(file))
+        {
+            return stream == null ? null : stream.readAllBytes();
+        }
+        catch (IOException e)
+        {
+            CarpetScriptServer.LOG.error("Unable to read scarpet compiler template " + file, e);
+            return null;
+        }
+    }
+
+    public static boolean isAvailable()
+    {
+        return FUNCTION_TEMPLATE != null && OPERATOR_TEMPLATE != null;
+    }
+
+    /**
+     * @return compiled call site, or null if it can't be compiled and tree interpretation should be used instead
+     */
+    @Nullable
+    public static LazyValue functionCall(Fluff.ILazyFunction function, Expression expression, Tokenizer.Token token, List<LazyValue> params)
+    {
+        return define(FUNCTION_TEMPLATE, List.of(function, expression, token, List.copyOf(params)));
+    }
+
+    /**
+     * @param right second operand, or null for unary operators
+     * @return compiled call site, or null if it can't be compiled and tree interpretation should be used instead
+     */
+    @Nullable
+    public static LazyValue operatorCall(Fluff.ILazyOperator operator, Expression expression, Tokenizer.Token token, LazyValue left, @Nullable LazyValue right)
+    {
+        // List.of doesn't take nulls
+        List<Object> data = right == null
+                ? List.of(operator, expression, token, left)
+                : List.of(operator, expression, token, left, right);
+        return define(OPERATOR_TEMPLATE, data);
+    }
+
+    @Nullable
+    private static LazyValue define(@Nullable byte[] template, List<?> classData)
+    {
+        if (template == null || classData.stream().anyMatch(Objects::isNull))
+        {
+            return null;
+        }
+        try
+        {
+            MethodHandles.Lookup site = LOOKUP.defineHiddenClassWithClassData(template, classData, true);
+            return (LazyValue) site.findConstructor(site.lookupClass(), CONSTRUCTOR).invoke();
+        }
+        catch (Throwable e)
+        {
+            if (!failureReported)
+            {
+                failureReported = true;
+                CarpetScriptServer.LOG.error("Unable to compile scarpet code, falling back to interpreted code", e);
+            }
+            return null;
+        }
+    }
+}
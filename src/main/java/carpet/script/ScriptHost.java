@@ -22,7 +22,6 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
@@ -32,7 +31,7 @@ public abstract class ScriptHost
     private static final Map<Long, Random> randomizers = new Long2ObjectOpenHashMap<>();
 
     public static Thread mainThread = null;
-    private final Map<Value, ThreadPoolExecutor> executorServices = new HashMap<>();
+    private final Map<Value, TaskPool> executorServices = new HashMap<>();
     private final Map<Value, Object> locks = new ConcurrentHashMap<>();
     private final ScriptServer scriptServer;
     protected boolean inTermination = false;
@@ -115,6 +114,7 @@ public abstract class ScriptHost
 
     protected ScriptHost parent;
     protected boolean perUser;
+    private volatile long codeGeneration = 0;
     public String user;
 
     public String getName()
@@ -177,6 +177,7 @@ public abstract class ScriptHost
         ModuleData data = new ModuleData(module);
         initializeModuleGlobals(data);
         moduleData.put(module, data);
+        codeGeneration++;
         runModuleCode(c, module);
         //moduleData.remove(module); // we are pooped already, but doesn't hurt to clean that up.
         //modules.remove(module.getName());
@@ -196,6 +197,7 @@ public abstract class ScriptHost
         {
             throw new InternalExpressionException("Cannot import from module that is not imported");
         }
+        codeGeneration++;
         for (String identifier : identifiers)
         {
             if (sourceData.globalFunctions.containsKey(identifier))
@@ -371,6 +373,7 @@ public abstract class ScriptHost
         ModuleData data = getModuleData(module);
         data.globalFunctions.entrySet().removeIf(e -> e.getKey().startsWith(prefix));
         data.functionImports.entrySet().removeIf(e -> e.getKey().startsWith(prefix));
+        codeGeneration++;
     }
 
     public void delFunction(Module module, String funName)
@@ -378,6 +381,7 @@ public abstract class ScriptHost
         ModuleData data = getModuleData(module);
         data.globalFunctions.remove(funName);
         data.functionImports.remove(funName);
+        codeGeneration++;
     }
 
     public void delGlobalVariableWithPrefix(Module module, String prefix)
@@ -385,6 +389,7 @@ public abstract class ScriptHost
         ModuleData data = getModuleData(module);
         data.globalVariables.entrySet().removeIf(e -> e.getKey().startsWith(prefix));
         data.globalsImports.entrySet().removeIf(e -> e.getKey().startsWith(prefix));
+        codeGeneration++;
     }
 
     public void delGlobalVariable(Module module, String varName)
@@ -392,6 +397,7 @@ public abstract class ScriptHost
         ModuleData data = getModuleData(module);
         data.globalFunctions.remove(varName);
         data.functionImports.remove(varName);
+        codeGeneration++;
     }
 
     private ModuleData getModuleData(Module module)
@@ -412,11 +418,24 @@ public abstract class ScriptHost
     public void addUserDefinedFunction(Context ctx, Module module, String name, FunctionValue fun)
     {
         getModuleData(module).globalFunctions.put(name, fun);
+        codeGeneration++;
     }
 
     public void setGlobalVariable(Module module, String name, LazyValue lv)
     {
-        getModuleData(module).globalVariables.put(name, lv);
+        if (getModuleData(module).globalVariables.put(name, lv) == null)
+        {
+            codeGeneration++;
+        }
+    }
+
+    /**
+     * Changes each time the set of functions or global variables visible to the app changes,
+     * telling cached parsed expressions that they may need to be reparsed
+     */
+    public long codeGeneration()
+    {
+        return codeGeneration;
     }
 
     public Stream<String> globalVariableNames(Module module, Predicate<String> predicate)
@@ -474,34 +493,74 @@ public abstract class ScriptHost
         return locks.computeIfAbsent(name, n -> new Object());
     }
 
-    public ThreadPoolExecutor getExecutor(Value pool)
+    public TaskPool getExecutor(Value pool)
     {
         if (inTermination)
         {
             return null;
         }
-        return executorServices.computeIfAbsent(pool, v -> (ThreadPoolExecutor) Executors.newCachedThreadPool());
+        return executorServices.computeIfAbsent(pool, v -> new TaskPool(TaskPool.Kind.PLATFORM, 0));
+    }
+
+    /**
+     * Sets the kind of threads and the limit of running tasks for a pool. The kind can only be changed
+     * while the pool has no tasks, returns false if that's not the case.
+     */
+    public boolean configureExecutor(Value pool, TaskPool.Kind kind, int limit)
+    {
+        if (inTermination)
+        {
+            return true;
+        }
+        TaskPool current = executorServices.get(pool);
+        if (current != null && current.kind() == kind)
+        {
+            current.setLimit(limit);
+            return true;
+        }
+        if (current != null)
+        {
+            if (!current.isIdle())
+            {
+                return false;
+            }
+            current.shutdown();
+        }
+        executorServices.put(pool, new TaskPool(kind, limit));
+        return true;
     }
 
     public int taskCount()
     {
-        return executorServices.values().stream().map(ThreadPoolExecutor::getActiveCount).reduce(0, Integer::sum);
+        return executorServices.values().stream().mapToInt(TaskPool::running).sum();
     }
 
     public int taskCount(Value pool)
     {
-        return executorServices.containsKey(pool) ? executorServices.get(pool).getActiveCount() : 0;
+        TaskPool executor = executorServices.get(pool);
+        return executor == null ? 0 : executor.running();
+    }
+
+    public int queuedTaskCount()
+    {
+        return executorServices.values().stream().mapToInt(TaskPool::queued).sum();
+    }
+
+    public int queuedTaskCount(Value pool)
+    {
+        TaskPool executor = executorServices.get(pool);
+        return executor == null ? 0 : executor.queued();
     }
 
     public void onClose()
     {
         inTermination = true;
-        executorServices.values().forEach(ThreadPoolExecutor::shutdown);
+        executorServices.values().forEach(TaskPool::shutdown);
         for (ScriptHost uh : userHosts.values())
         {
             uh.onClose();
         }
-        if (taskCount() > 0)
+        if (taskCount() + queuedTaskCount() > 0)
         {
             executorServices.values().forEach(e -> {
                 ExecutorService stopper = Executors.newSingleThreadExecutor();
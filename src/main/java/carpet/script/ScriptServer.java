@@ -12,4 +12,12 @@ public abstract class ScriptServer
     public final Map<Value, Value> systemGlobals = new ConcurrentHashMap<>();
 
     public abstract Path resolveResource(String suffix);
+
+    /**
+     * Whether all scripts got stopped, so long running built-ins should give up
+     */
+    public boolean isStopped()
+    {
+        return false;
+    }
 }
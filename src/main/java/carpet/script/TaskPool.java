@@ -0,0 +1,201 @@
+package carpet.script;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor behind a named {@code task_thread} queue of an app. Tasks run either on a cached pool of platform threads,
+ * or each on its own virtual thread, and with a limit set, tasks over it wait in a queue until a running one finishes.
+ */
+public class TaskPool extends AbstractExecutorService
+{
+    public enum Kind
+    {
+        PLATFORM, VIRTUAL
+    }
+
+    private final Kind kind;
+    private final ExecutorService threads;
+    private final Deque<Runnable> queue = new ArrayDeque<>();
+    // 0 means no limit
+    private int limit;
+    private int running;
+    private boolean shutdown;
+
+    public TaskPool(Kind kind, int limit)
+    {
+        this.kind = kind;
+        this.limit = limit;
+        this.threads = kind == Kind.VIRTUAL
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("Scarpet virtual task ", 0).factory())
+                : Executors.newCachedThreadPool();
+    }
+
+    public Kind kind()
+    {
+        return kind;
+    }
+
+    public synchronized int limit()
+    {
+        return limit;
+    }
+
+    public void setLimit(int limit)
+    {
+        synchronized (this)
+        {
+            this.limit = limit;
+        }
+        // a higher limit can let queued tasks in
+        startQueued();
+    }
+
+    public synchronized int running()
+    {
+        return running;
+    }
+
+    public synchronized int queued()
+    {
+        return queue.size();
+    }
+
+    public synchronized boolean isIdle()
+    {
+        return running == 0 && queue.isEmpty();
+    }
+
+    @Override
+    public void execute(Runnable task)
+    {
+        synchronized (this)
+        {
+            if (shutdown)
+            {
+                throw new RejectedExecutionException("Task pool is shut down");
+            }
+            queue.add(task);
+        }
+        startQueued();
+    }
+
+    private void startQueued()
+    {
+        while (true)
+        {
+            Runnable next;
+            synchronized (this)
+            {
+                if (queue.isEmpty())
+                {
+                    if (shutdown)
+                    {
+                        threads.shutdown();
+                    }
+                    return;
+                }
+                if (limit > 0 && running >= limit)
+                {
+                    return;
+                }
+                next = queue.poll();
+                running++;
+            }
+            try
+            {
+                threads.execute(() -> {
+                    try
+                    {
+                        next.run();
+                    }
+                    finally
+                    {
+                        finished();
+                    }
+                });
+            }
+            catch (RejectedExecutionException e)
+            {
+                synchronized (this)
+                {
+                    running--;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void finished()
+    {
+        synchronized (this)
+        {
+            running--;
+        }
+        startQueued();
+    }
+
+    /**
+     * Stops accepting new tasks, queued ones still get to run
+     */
+    @Override
+    public void shutdown()
+    {
+        synchronized (this)
+        {
+            shutdown = true;
+            if (!queue.isEmpty())
+            {
+                return;
+            }
+        }
+        threads.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        List<Runnable> dropped;
+        synchronized (this)
+        {
+            shutdown = true;
+            dropped = new ArrayList<>(queue);
+            queue.clear();
+        }
+        dropped.addAll(threads.shutdownNow());
+        return dropped;
+    }
+
+    @Override
+    public synchronized boolean isShutdown()
+    {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+        synchronized (this)
+        {
+            if (!shutdown || !queue.isEmpty())
+            {
+                return false;
+            }
+        }
+        return threads.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        // threads shut down only once the queue is empty, so until then this waits for the whole timeout
+        return threads.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,177 @@
+package carpet.script;
+
+import carpet.script.external.Vanilla;
+import net.minecraft.server.MinecraftServer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Block changes made by app tasks off the main thread. With a per tick budget set by the {@code scriptsTaskWriteBudget}
+ * rule, tasks queue their changes and carry on, and the server applies up to that many changes each tick in the order
+ * they were made. Anything else a task needs to run on the main thread goes through {@link #runBlocking}, which first
+ * applies the changes that task queued before, so they are all handled in a single trip to the main thread.
+ * Reads of single blocks go through {@link #applyQueued} first, so a task sees its own changes.
+ */
+public class WorldWriteQueue
+{
+    // how many ticks worth of changes tasks can get ahead of the server before they have to wait
+    private static final int MAX_TICKS_AHEAD = 20;
+    private static final int MIN_PENDING = 4096;
+
+    private record Write(long id, Runnable action) {}
+
+    private final MinecraftServer server;
+    private final Deque<Write> writes = new ArrayDeque<>();
+    private long lastId;
+    private volatile long applied;
+    // last change queued by the current thread
+    private final ThreadLocal<long[]> lastQueued = ThreadLocal.withInitial(() -> new long[1]);
+
+    public WorldWriteQueue(MinecraftServer server)
+    {
+        this.server = server;
+    }
+
+    private int budget()
+    {
+        return Vanilla.ScriptServer_taskWriteBudget(server);
+    }
+
+    /**
+     * Whether changes from the current thread should be queued rather than applied right away
+     */
+    public boolean isQueueing()
+    {
+        return !server.isSameThread() && budget() > 0;
+    }
+
+    public synchronized int size()
+    {
+        return writes.size();
+    }
+
+    /**
+     * Queues a change to be applied on the main thread, waits only if the queue is too far behind
+     */
+    public void add(Runnable action)
+    {
+        int maxPending = Math.max(MIN_PENDING, budget() * MAX_TICKS_AHEAD);
+        synchronized (this)
+        {
+            try
+            {
+                while (writes.size() >= maxPending)
+                {
+                    wait(50);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                // app is shutting down, still keeping the change so it's not lost
+                Thread.currentThread().interrupt();
+            }
+            writes.add(new Write(++lastId, action));
+            lastQueued.get()[0] = lastId;
+        }
+    }
+
+    /**
+     * Runs the action on the main thread, after all the changes the current thread queued so far
+     */
+    public void runBlocking(Runnable action)
+    {
+        long last = lastQueued.get()[0];
+        server.executeBlocking(() -> {
+            applyUntil(last);
+            action.run();
+        });
+    }
+
+    /**
+     * Applies the changes the current thread queued so far, so what it reads from the world next includes them.
+     * Doesn't go to the main thread if they are all applied already
+     */
+    public void applyQueued()
+    {
+        long last = lastQueued.get()[0];
+        if (applied < last)
+        {
+            server.executeBlocking(() -> applyUntil(last));
+        }
+    }
+
+    /**
+     * Applies queued changes within the tick budget, or all of them if queueing is disabled in the meantime
+     */
+    public void tick()
+    {
+        int budget = budget();
+        while (true)
+        {
+            List<Write> chunk = new ArrayList<>();
+            synchronized (this)
+            {
+                int count = budget > 0 ? Math.min(budget, writes.size()) : writes.size();
+                for (int i = 0; i < count; i++)
+                {
+                    chunk.add(writes.poll());
+                }
+            }
+            if (chunk.isEmpty())
+            {
+                return;
+            }
+            chunk.forEach(this::apply);
+            synchronized (this)
+            {
+                notifyAll();
+            }
+            if (budget > 0)
+            {
+                return;
+            }
+        }
+    }
+
+    private void applyUntil(long id)
+    {
+        while (applied < id)
+        {
+            Write write;
+            synchronized (this)
+            {
+                write = writes.poll();
+                notifyAll();
+            }
+            if (write == null)
+            {
+                return;
+            }
+            apply(write);
+        }
+    }
+
+    private void apply(Write write)
+    {
+        try
+        {
+            write.action().run();
+        }
+        catch (RuntimeException exc)
+        {
+            CarpetScriptServer.LOG.error("Failed to apply block change queued by an app task", exc);
+        }
+        applied = write.id();
+    }
+
+    /**
+     * Applies everything that is left, used when the server shuts down
+     */
+    public void flush()
+    {
+        applyUntil(Long.MAX_VALUE);
+    }
+}
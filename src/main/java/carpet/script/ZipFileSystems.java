@@ -0,0 +1,127 @@
+package carpet.script;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Zip containers of app files, kept open between file operations, since a zip file system rewrites the whole archive
+ * every time it gets closed. Changes get written out when the server saves, when an app that used the container gets
+ * unloaded, and when the server closes. Containers are only used and closed under their file lock from
+ * {@link FileWriteQueue#lockFor}, so one is never closed in the middle of an operation.
+ */
+public final class ZipFileSystems
+{
+    private static final class Container
+    {
+        final FileSystem fileSystem;
+        // apps that used the container since it was opened
+        final Set<String> apps = new HashSet<>();
+
+        Container(FileSystem fileSystem)
+        {
+            this.fileSystem = fileSystem;
+        }
+    }
+
+    // guarded by itself
+    private static final Map<Path, Container> open = new HashMap<>();
+
+    private ZipFileSystems()
+    {
+    }
+
+    /**
+     * Open file system of the zip file, or null if it doesn't exist and shouldn't be created
+     */
+    @Nullable
+    public static FileSystem get(Path zip, boolean create, @Nullable String app) throws IOException
+    {
+        Path key = zip.toAbsolutePath().normalize();
+        synchronized (open)
+        {
+            Container container = open.get(key);
+            if (container == null || !container.fileSystem.isOpen())
+            {
+                if (!Files.exists(key) && !create)
+                {
+                    return null;
+                }
+                Files.createDirectories(key.getParent());
+                Map<String, String> env = create ? Map.of("create", "true") : Map.of();
+                container = new Container(FileSystems.newFileSystem(URI.create("jar:" + key.toUri()), env));
+                open.put(key, container);
+            }
+            if (app != null)
+            {
+                container.apps.add(app);
+            }
+            return container.fileSystem;
+        }
+    }
+
+    /**
+     * Writes out and closes the containers used by the app
+     */
+    public static void closeFor(String app)
+    {
+        close(container -> container.apps.contains(app));
+    }
+
+    /**
+     * Writes out and closes all the containers, they get opened again when needed
+     */
+    public static void closeAll()
+    {
+        close(container -> true);
+    }
+
+    private static void close(Predicate<Container> which)
+    {
+        List<Path> paths = new ArrayList<>();
+        synchronized (open)
+        {
+            open.forEach((path, container) -> {
+                if (which.test(container))
+                {
+                    paths.add(path);
+                }
+            });
+        }
+        for (Path path : paths)
+        {
+            // taking the file lock first, so no one opens it again before this one is written out
+            synchronized (FileWriteQueue.lockFor(path))
+            {
+                Container container;
+                synchronized (open)
+                {
+                    container = open.remove(path);
+                }
+                if (container == null)
+                {
+                    continue;
+                }
+                try
+                {
+                    container.fileSystem.close();
+                }
+                catch (IOException e)
+                {
+                    CarpetScriptServer.LOG.error("Failed to save zip file " + path, e);
+                }
+            }
+        }
+    }
+}
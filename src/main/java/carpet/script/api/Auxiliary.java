@@ -838,7 +838,7 @@ public class Auxiliary
             CommandSourceStack innerSource = outerSource.withLevel((ServerLevel) world);
             Context newCtx = c.recreate();
             ((CarpetContext) newCtx).swapSource(innerSource);
-            newCtx.variables = c.variables;
+            newCtx.shareVariablesWith(c);
             Value retval = lv.get(1).evalValue(newCtx);
             return (cc, tt) -> retval;
         });
@@ -872,7 +872,7 @@ public class Auxiliary
             }
             String what = lv.get(locator.offset).getString();
             Value[] result = new Value[]{Value.NULL};
-            ((CarpetContext) c).server().executeBlocking(() ->
+            ((CarpetContext) c).scriptServer().worldWrites.runBlocking(() ->
             {
                 Boolean res = FeatureGenerator.plop(what, ((CarpetContext) c).level(), locator.block.getPos());
 
@@ -955,6 +955,14 @@ public class Auxiliary
                 Value parsedJson = GSON.fromJson(json, Value.class);
                 return parsedJson == null ? Value.NULL : parsedJson;
             }
+            else if (fdesc.type == FileArgument.Type.LOG)
+            {
+                Value records = ((CarpetScriptHost) c.host).readLogFile(fdesc, line -> {
+                    Value record = GSON.fromJson(line, Value.class);
+                    return record == null ? Value.NULL : record;
+                });
+                return records == null ? Value.NULL : records;
+            }
             else
             {
                 List<String> content = ((CarpetScriptHost) c.host).readTextResource(fdesc);
@@ -988,6 +996,15 @@ public class Auxiliary
                 ((CarpetScriptHost) c.host).removeResourceFile(fdesc);
                 success = ((CarpetScriptHost) c.host).appendLogFile(fdesc, data);
             }
+            else if (fdesc.type == FileArgument.Type.LOG)
+            {
+                List<String> records = new ArrayList<>();
+                for (int i = 2; i < lv.size(); i++)
+                {
+                    records.add(lv.get(i).toJson().toString());
+                }
+                success = ((CarpetScriptHost) c.host).appendLogFile(fdesc, records);
+            }
             else
             {
                 List<String> data = new ArrayList<>();
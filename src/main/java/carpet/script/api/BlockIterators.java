@@ -5,26 +5,43 @@ import carpet.script.Context;
 import carpet.script.Expression;
 import carpet.script.Fluff;
 import carpet.script.LazyValue;
+import carpet.script.WorldWriteQueue;
 import carpet.script.argument.BlockArgument;
 import carpet.script.argument.Vector3Argument;
 import carpet.script.exception.BreakStatement;
 import carpet.script.exception.ContinueStatement;
 import carpet.script.exception.InternalExpressionException;
+import carpet.script.value.BlockRegionValue;
 import carpet.script.value.BlockValue;
 import carpet.script.value.LazyListValue;
 import carpet.script.value.ListValue;
+import carpet.script.value.MapValue;
 import carpet.script.value.NumericValue;
+import carpet.script.value.StringValue;
 import carpet.script.value.Value;
+import carpet.script.value.ValueConversions;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
 
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.Registry;
+import net.minecraft.core.SectionPos;
 import net.minecraft.core.Vec3i;
+import net.minecraft.core.registries.Registries;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.util.Mth;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
 
+import static carpet.script.value.NBTSerializableValue.nameFromResource;
 import static java.lang.Math.abs;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
@@ -89,65 +106,10 @@ public class BlockIterators
             }
             LazyValue expr = llv.get(rangeLocator.offset);
 
-            int cx = center.getX();
-            int cy = center.getY();
-            int cz = center.getZ();
-            int xrange = range.getX();
-            int yrange = range.getY();
-            int zrange = range.getZ();
-            int xprange = upperRange.getX();
-            int yprange = upperRange.getY();
-            int zprange = upperRange.getZ();
-
-            //saving outer scope
-            LazyValue xVal = c.getVariable("_x");
-            LazyValue yVal = c.getVariable("_y");
-            LazyValue zVal = c.getVariable("_z");
-            LazyValue defaultVal = c.getVariable("_");
-            int sCount = 0;
-            outer:
-            for (int y = cy - yrange; y <= cy + yprange; y++)
-            {
-                int yFinal = y;
-                c.setVariable("_y", (ct, tt) -> new NumericValue(yFinal).bindTo("_y"));
-                for (int x = cx - xrange; x <= cx + xprange; x++)
-                {
-                    int xFinal = x;
-                    c.setVariable("_x", (ct, tt) -> new NumericValue(xFinal).bindTo("_x"));
-                    for (int z = cz - zrange; z <= cz + zprange; z++)
-                    {
-                        int zFinal = z;
-
-                        c.setVariable("_z", (ct, tt) -> new NumericValue(zFinal).bindTo("_z"));
-                        Value blockValue = BlockValue.fromCoords(((CarpetContext) c), xFinal, yFinal, zFinal).bindTo("_");
-                        c.setVariable("_", (ct, tt) -> blockValue);
-                        Value result;
-                        try
-                        {
-                            result = expr.evalValue(c, t);
-                        }
-                        catch (ContinueStatement notIgnored)
-                        {
-                            result = notIgnored.retval;
-                        }
-                        catch (BreakStatement notIgnored)
-                        {
-                            break outer;
-                        }
-                        if (t != Context.VOID && result.getBoolean())
-                        {
-                            sCount += 1;
-                        }
-                    }
-                }
-            }
-            //restoring outer scope
-            c.setVariable("_x", xVal);
-            c.setVariable("_y", yVal);
-            c.setVariable("_z", zVal);
-            c.setVariable("_", defaultVal);
-            int finalSCount = sCount;
-            return (ct, tt) -> new NumericValue(finalSCount);
+            int sCount = evalBox(cc, t, expr,
+                    center.getX() - range.getX(), center.getY() - range.getY(), center.getZ() - range.getZ(),
+                    center.getX() + upperRange.getX(), center.getY() + upperRange.getY(), center.getZ() + upperRange.getZ(), false);
+            return (ct, tt) -> new NumericValue(sCount);
         });
 
         // must be lazy
@@ -177,56 +139,19 @@ public class BlockIterators
             int maxx = max(x1, x2);
             int maxy = max(y1, y2);
             int maxz = max(z1, z2);
-            LazyValue expr = llv.get(pos2Locator.offset);
-
-            //saving outer scope
-            LazyValue xVal = c.getVariable("_x");
-            LazyValue yVal = c.getVariable("_y");
-            LazyValue zVal = c.getVariable("_z");
-            LazyValue defaultVal = c.getVariable("_");
-            int sCount = 0;
-            outer:
-            for (int y = miny; y <= maxy; y++)
+            boolean skipAir = false;
+            if (lv.size() > pos2Locator.offset)
             {
-                int yFinal = y;
-                c.setVariable("_y", (ct, tt) -> new NumericValue(yFinal).bindTo("_y"));
-                for (int x = minx; x <= maxx; x++)
+                if (lv.size() > pos2Locator.offset + 1)
                 {
-                    int xFinal = x;
-                    c.setVariable("_x", (ct, tt) -> new NumericValue(xFinal).bindTo("_x"));
-                    for (int z = minz; z <= maxz; z++)
-                    {
-                        int zFinal = z;
-                        c.setVariable("_z", (ct, tt) -> new NumericValue(zFinal).bindTo("_z"));
-                        Value blockValue = BlockValue.fromCoords(((CarpetContext) c), xFinal, yFinal, zFinal).bindTo("_");
-                        c.setVariable("_", (ct, tt) -> blockValue);
-                        Value result;
-                        try
-                        {
-                            result = expr.evalValue(c, t);
-                        }
-                        catch (ContinueStatement notIgnored)
-                        {
-                            result = notIgnored.retval;
-                        }
-                        catch (BreakStatement notIgnored)
-                        {
-                            break outer;
-                        }
-                        if (t != Context.VOID && result.getBoolean())
-                        {
-                            sCount += 1;
-                        }
-                    }
+                    throw new InternalExpressionException("'volume' takes two positions, an optional flag to skip air, and an expression");
                 }
+                skipAir = lv.get(pos2Locator.offset).getBoolean();
             }
-            //restoring outer scope
-            c.setVariable("_x", xVal);
-            c.setVariable("_y", yVal);
-            c.setVariable("_z", zVal);
-            c.setVariable("_", defaultVal);
-            int finalSCount = sCount;
-            return (ct, tt) -> new NumericValue(finalSCount);
+            LazyValue expr = llv.get(llv.size() - 1);
+
+            int sCount = evalBox(cc, t, expr, minx, miny, minz, maxx, maxy, maxz, skipAir);
+            return (ct, tt) -> new NumericValue(sCount);
         });
 
         expression.addContextFunction("neighbours", -1, (c, t, lv) ->
@@ -541,5 +466,185 @@ public class BlockIterators
                 };
             }
         });
+
+        expression.addContextFunction("block_region", -1, (c, t, lv) ->
+        {
+            CarpetContext cc = (CarpetContext) c;
+            BlockArgument pos1Locator = BlockArgument.findIn(cc, lv, 0);
+            BlockArgument pos2Locator = BlockArgument.findIn(cc, lv, pos1Locator.offset);
+            if (lv.size() > pos2Locator.offset)
+            {
+                throw new InternalExpressionException("'block_region' requires only two positions");
+            }
+            cc.scriptServer().worldWrites.applyQueued();
+            return BlockRegionValue.read(cc.level(), pos1Locator.block.getPos(), pos2Locator.block.getPos());
+        });
+
+        expression.addContextFunction("region_palette", 1, (c, t, lv) ->
+        {
+            BlockRegionValue region = regionArgument("region_palette", lv);
+            List<Value> states = new ArrayList<>();
+            for (BlockState state : region.palette())
+            {
+                states.add(new BlockValue(state, region.getWorld(), (BlockPos) null));
+            }
+            return ListValue.wrap(states);
+        });
+
+        expression.addContextFunction("region_get", -1, (c, t, lv) ->
+        {
+            BlockRegionValue region = regionArgument("region_get", lv);
+            BlockPos pos = BlockArgument.findIn((CarpetContext) c, lv, 1).block.getPos();
+            BlockState state = region.getState(pos);
+            return state == null ? Value.NULL : new BlockValue(state, region.getWorld(), pos);
+        });
+
+        expression.addContextFunction("region_count", -1, (c, t, lv) ->
+        {
+            BlockRegionValue region = regionArgument("region_count", lv);
+            if (lv.size() > 1)
+            {
+                return new NumericValue(region.count(stateMatcher(region, lv.get(1))));
+            }
+            Map<Block, Integer> byBlock = new HashMap<>();
+            region.countStates().forEach((state, count) -> byBlock.merge(state.getBlock(), count, Integer::sum));
+            Registry<Block> blocks = region.getWorld().registryAccess().lookupOrThrow(Registries.BLOCK);
+            Map<Value, Value> result = new HashMap<>();
+            byBlock.forEach((block, count) -> result.put(new StringValue(nameFromResource(blocks.getKey(block))), new NumericValue(count)));
+            return MapValue.wrap(result);
+        });
+
+        expression.addContextFunction("region_find", 2, (c, t, lv) ->
+        {
+            BlockRegionValue region = regionArgument("region_find", lv);
+            List<Value> positions = new ArrayList<>();
+            for (BlockPos pos : region.find(stateMatcher(region, lv.get(1))))
+            {
+                positions.add(ValueConversions.of(pos));
+            }
+            return ListValue.wrap(positions);
+        });
+    }
+
+    /**
+     * Evaluates the expression for each block in the box, by y, x and z, keeping the current chunk and its section
+     * around, so they are only looked up again when the iteration moves to another one.
+     * With skipAir, sections with only air are stepped over without evaluating the expression.
+     * Returns the number of evaluations with a true result.
+     */
+    private static int evalBox(CarpetContext c, Context.Type t, LazyValue expr, int minx, int miny, int minz, int maxx, int maxy, int maxz, boolean skipAir)
+    {
+        ServerLevel world = c.level();
+        BlockPos origin = c.origin();
+        //saving outer scope
+        LazyValue xVal = c.getVariable("_x");
+        LazyValue yVal = c.getVariable("_y");
+        LazyValue zVal = c.getVariable("_z");
+        LazyValue defaultVal = c.getVariable("_");
+        int sCount = 0;
+        // changes queued by a task, in this loop or before it, need to be in the world before the blocks are read
+        WorldWriteQueue writes = c.scriptServer().worldWrites;
+        boolean queueing = writes.isQueueing();
+        LevelChunk chunk = null;
+        LevelChunkSection section = null;
+        int sectionY = Integer.MIN_VALUE;
+        outer:
+        for (int y = miny; y <= maxy; y++)
+        {
+            int yFinal = y;
+            int worldY = origin.getY() + y;
+            c.setVariable("_y", (ct, tt) -> new NumericValue(yFinal).bindTo("_y"));
+            for (int x = minx; x <= maxx; x++)
+            {
+                int xFinal = x;
+                int worldX = origin.getX() + x;
+                c.setVariable("_x", (ct, tt) -> new NumericValue(xFinal).bindTo("_x"));
+                for (int z = minz; z <= maxz; z++)
+                {
+                    int worldZ = origin.getZ() + z;
+                    int chunkX = SectionPos.blockToSectionCoord(worldX);
+                    int chunkZ = SectionPos.blockToSectionCoord(worldZ);
+                    if (chunk == null || chunk.getPos().x != chunkX || chunk.getPos().z != chunkZ)
+                    {
+                        chunk = world.getChunk(chunkX, chunkZ);
+                        sectionY = Integer.MIN_VALUE;
+                    }
+                    if (sectionY != worldY)
+                    {
+                        section = world.isOutsideBuildHeight(worldY) ? null : chunk.getSection(chunk.getSectionIndex(worldY));
+                        sectionY = worldY;
+                    }
+                    if (skipAir && (section == null || section.hasOnlyAir()))
+                    {
+                        // rest of the row in this chunk is air as well
+                        z = min(maxz, SectionPos.sectionToBlockCoord(chunkZ, 15) - origin.getZ());
+                        continue;
+                    }
+                    int zFinal = z;
+                    c.setVariable("_z", (ct, tt) -> new NumericValue(zFinal).bindTo("_z"));
+                    BlockPos pos = new BlockPos(worldX, worldY, worldZ);
+                    // state is read when the block is reached, so changes made earlier in the loop are visible
+                    if (queueing)
+                    {
+                        writes.applyQueued();
+                    }
+                    BlockState state = section == null
+                            ? Blocks.VOID_AIR.defaultBlockState()
+                            : section.getBlockState(worldX & 15, worldY & 15, worldZ & 15);
+                    Value blockValue = new BlockValue(state, world, pos).bindTo("_");
+                    c.setVariable("_", (ct, tt) -> blockValue);
+                    Value result;
+                    try
+                    {
+                        result = expr.evalValue(c, t);
+                    }
+                    catch (ContinueStatement notIgnored)
+                    {
+                        result = notIgnored.retval;
+                    }
+                    catch (BreakStatement notIgnored)
+                    {
+                        break outer;
+                    }
+                    if (t != Context.VOID && result.getBoolean())
+                    {
+                        sCount += 1;
+                    }
+                }
+            }
+        }
+        //restoring outer scope
+        c.setVariable("_x", xVal);
+        c.setVariable("_y", yVal);
+        c.setVariable("_z", zVal);
+        c.setVariable("_", defaultVal);
+        return sCount;
+    }
+
+    private static BlockRegionValue regionArgument(String name, List<Value> lv)
+    {
+        if (lv.isEmpty() || !(lv.get(0) instanceof final BlockRegionValue region))
+        {
+            throw new InternalExpressionException("'" + name + "' requires a block region as the first argument");
+        }
+        return region;
+    }
+
+    // blocks given with properties need to match exactly, and by name only need the same block
+    private static Predicate<BlockState> stateMatcher(BlockRegionValue region, Value block)
+    {
+        if (block instanceof final BlockValue blockValue)
+        {
+            BlockState state = blockValue.getBlockState();
+            return s -> s == state;
+        }
+        String name = block.getString();
+        BlockState state = BlockValue.fromString(name, region.getWorld()).getBlockState();
+        if (name.contains("["))
+        {
+            return s -> s == state;
+        }
+        Block type = state.getBlock();
+        return s -> s.getBlock() == type;
     }
 }
@@ -40,7 +40,8 @@ public class Threading
             RuntimeException[] internal = new RuntimeException[]{null};
             try
             {
-                ((CarpetContext) c).server().executeBlocking(() ->
+                // changes the task queued before are applied in the same trip to the main thread
+                cc.scriptServer().worldWrites.runBlocking(() ->
                 {
                     try
                     {
@@ -5,6 +5,7 @@ import carpet.script.CarpetScriptServer;
 import carpet.script.Context;
 import carpet.script.Expression;
 import carpet.script.Fluff;
+import carpet.script.WorldWriteQueue;
 import carpet.script.external.Carpet;
 import carpet.script.external.Vanilla;
 import carpet.script.utils.Colors;
@@ -17,6 +18,7 @@ import carpet.script.exception.Throwables;
 import carpet.script.utils.BiomeInfo;
 import carpet.script.utils.InputValidator;
 import carpet.script.utils.WorldTools;
+import carpet.script.value.BlockRegionValue;
 import carpet.script.value.BlockValue;
 import carpet.script.value.BooleanValue;
 import carpet.script.value.EntityValue;
@@ -30,6 +32,7 @@ import carpet.script.value.ValueConversions;
 
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.Util;
 import net.minecraft.core.BlockPos;
@@ -626,7 +629,22 @@ public class WorldAccess
             {
                 force = lv.get(locator.offset).getBoolean();
             }
-            return BooleanValue.of(canHasChunk(((CarpetContext) c).level(), new ChunkPos(pos), null, force));
+            return BooleanValue.of(canHasChunk(((CarpetContext) c).level(), new ChunkPos(pos), force));
+        });
+
+        expression.addContextFunction("generated_chunks", -1, (c, t, lv) ->
+        {
+            CarpetContext cc = (CarpetContext) c;
+            BlockArgument fromLocator = BlockArgument.findIn(cc, lv, 0);
+            BlockArgument toLocator = BlockArgument.findIn(cc, lv, fromLocator.offset);
+            LongSet chunks = WorldTools.generatedChunks(cc.level(), new ChunkPos(fromLocator.block.getPos()), new ChunkPos(toLocator.block.getPos()));
+            List<Value> result = new ArrayList<>(chunks.size());
+            for (LongIterator iterator = chunks.iterator(); iterator.hasNext(); )
+            {
+                long packed = iterator.nextLong();
+                result.add(ListValue.of(new NumericValue(ChunkPos.getX(packed)), new NumericValue(ChunkPos.getZ(packed))));
+            }
+            return ListValue.wrap(result);
         });
 
         expression.addContextFunction("generation_status", -1, (c, t, lv) ->
@@ -728,7 +746,7 @@ public class WorldAccess
                 return lv.get(0);
             }
             Value[] result = new Value[]{Value.NULL};
-            ((CarpetContext) c).server().executeBlocking(() ->
+            ((CarpetContext) c).scriptServer().worldWrites.runBlocking(() ->
             {
                 ThreadLocal<Boolean> skipUpdates = Carpet.getImpendingFillSkipUpdates();
                 boolean previous = skipUpdates.get();
@@ -810,14 +828,16 @@ public class WorldAccess
             }
             CompoundTag finalData = data;
 
-            if (sourceBlockState == targetBlockState && data == null)
+            WorldWriteQueue queue = cc.scriptServer().worldWrites;
+            // with queued changes still pending the current state can't be trusted
+            if (sourceBlockState == targetBlockState && data == null && !queue.isQueueing())
             {
                 return Value.FALSE;
             }
             BlockState finalSourceBlockState = sourceBlockState;
             BlockPos targetPos = targetLocator.block.getPos();
             Boolean[] result = new Boolean[]{true};
-            cc.server().executeBlocking(() ->
+            Runnable write = () ->
             {
                 Clearable.tryClear(world.getBlockEntity(targetPos));
                 boolean success = world.setBlock(targetPos, finalSourceBlockState, 2);
@@ -836,10 +856,65 @@ public class WorldAccess
                     }
                 }
                 result[0] = success;
-            });
+            };
+            if (queue.isQueueing())
+            {
+                // not waiting for the change, so assuming it will succeed
+                queue.add(write);
+            }
+            else
+            {
+                cc.server().executeBlocking(write);
+            }
             return !result[0] ? Value.FALSE : new BlockValue(finalSourceBlockState, world, targetLocator.block.getPos());
         });
 
+        expression.addContextFunction("set_region", -1, (c, t, lv) ->
+        {
+            CarpetContext cc = (CarpetContext) c;
+            ServerLevel world = cc.level();
+            BlockPos from;
+            BlockPos to;
+            WorldTools.StateSource states;
+            if (!lv.isEmpty() && lv.get(0) instanceof final BlockRegionValue region)
+            {
+                from = lv.size() > 1 ? BlockArgument.findIn(cc, lv, 1).block.getPos() : region.from();
+                int dx = from.getX() - region.from().getX();
+                int dy = from.getY() - region.from().getY();
+                int dz = from.getZ() - region.from().getZ();
+                to = region.to().offset(dx, dy, dz);
+                // void air marks blocks read from outside of the world, these are left as they are
+                states = (x, y, z) -> {
+                    BlockState state = region.getState(x - dx, y - dy, z - dz);
+                    return state.is(Blocks.VOID_AIR) ? null : state;
+                };
+            }
+            else
+            {
+                BlockArgument pos1Locator = BlockArgument.findIn(cc, lv, 0);
+                BlockArgument pos2Locator = BlockArgument.findIn(cc, lv, pos1Locator.offset);
+                if (lv.size() <= pos2Locator.offset)
+                {
+                    throw new InternalExpressionException("'set_region' requires two positions and a block to fill the box with");
+                }
+                BlockState state = BlockArgument.findIn(cc, lv, pos2Locator.offset, true).block.getBlockState();
+                BlockPos pos1 = pos1Locator.block.getPos();
+                BlockPos pos2 = pos2Locator.block.getPos();
+                from = new BlockPos(Math.min(pos1.getX(), pos2.getX()), Math.min(pos1.getY(), pos2.getY()), Math.min(pos1.getZ(), pos2.getZ()));
+                to = new BlockPos(Math.max(pos1.getX(), pos2.getX()), Math.max(pos1.getY(), pos2.getY()), Math.max(pos1.getZ(), pos2.getZ()));
+                // regions are capped when read, boxes are capped the same, since it all runs on the server thread
+                long volume = (long) (to.getX() - from.getX() + 1) * (to.getY() - from.getY() + 1) * (to.getZ() - from.getZ() + 1);
+                if (volume > BlockRegionValue.MAX_VOLUME)
+                {
+                    throw new InternalExpressionException("Box of " + volume + " blocks is too large to fill at once, 'set_region' can fill up to " + BlockRegionValue.MAX_VOLUME + " blocks");
+                }
+                states = (x, y, z) -> state;
+            }
+            int[] changed = new int[]{0};
+            cc.scriptServer().worldWrites.runBlocking(() -> changed[0] = WorldTools.setBlocks(world, from, to, states));
+            return new NumericValue(changed[0]);
+        });
+
         expression.addContextFunction("destroy", -1, (c, t, lv) ->
         {
             CarpetContext cc = (CarpetContext) c;
@@ -1371,7 +1446,7 @@ public class WorldAccess
             CarpetContext cc = (CarpetContext) c;
             BlockPos pos = BlockArgument.findIn(cc, lv, 0).block.getPos();
             ServerLevel world = cc.level();
-            cc.server().executeBlocking(() -> WorldTools.forceChunkUpdate(pos, world));
+            cc.scriptServer().worldWrites.runBlocking(() -> WorldTools.forceChunkUpdate(pos, world));
             return Value.TRUE;
         });
 
@@ -1539,7 +1614,7 @@ public class WorldAccess
             // good 'ol pointer
             Value[] result = new Value[]{Value.NULL};
             // technically a world modification. Even if we could let it slide, we will still park it
-            ((CarpetContext) c).server().executeBlocking(() ->
+            ((CarpetContext) c).scriptServer().worldWrites.runBlocking(() ->
             {
                 Map<Structure, StructureStart> structures = world.getChunk(pos).getAllStarts();
                 if (lv.size() == locator.offset + 1)
@@ -1632,7 +1707,7 @@ public class WorldAccess
             }
             ServerLevel world = cc.level();
             Value[] result = new Value[]{Value.NULL};
-            ((CarpetContext) c).server().executeBlocking(() ->
+            ((CarpetContext) c).scriptServer().worldWrites.runBlocking(() ->
             {
                 Map<String, Integer> report = Vanilla.ChunkMap_regenerateChunkRegion(world.getChunkSource().chunkMap, requestedChunks);
                 result[0] = MapValue.wrap(report.entrySet().stream().collect(Collectors.toMap(
@@ -2,11 +2,15 @@ package carpet.script.argument;
 
 import carpet.script.CarpetScriptServer;
 import carpet.script.Context;
+import carpet.script.FileWriteQueue;
+import carpet.script.LogFiles;
 import carpet.script.Module;
 import carpet.script.ScriptHost;
+import carpet.script.ZipFileSystems;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ThrowStatement;
 import carpet.script.exception.Throwables;
+import carpet.script.value.LazyListValue;
 import carpet.script.value.MapValue;
 import carpet.script.value.StringValue;
 import carpet.script.value.Value;
@@ -31,21 +35,21 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystemNotFoundException;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -61,22 +65,12 @@ public class FileArgument
     private Path zipPath;
     private final ScriptHost host;
 
-    public static final Object writeIOSync = new Object();
-
+    /**
+     * Lets go of the zip container, which stays open in {@link ZipFileSystems} for the following operations
+     */
     public void close()
     {
-        if (zfs != null && zfs.isOpen())
-        {
-            try
-            {
-                zfs.close();
-            }
-            catch (IOException e)
-            {
-                throw new InternalExpressionException("Unable to close zip container: " + zipContainer);
-            }
-            zfs = null;
-        }
+        zfs = null;
     }
 
     public enum Type
@@ -85,6 +79,7 @@ public class FileArgument
         TEXT("text", ".txt"),
         NBT("nbt", ".nbt"),
         JSON("json", ".json"),
+        LOG("log", ".jsonl"),
         FOLDER("folder", ""),
         ANY("any", "");
 
@@ -143,6 +138,10 @@ public class FileArgument
         {
             throw new InternalExpressionException("Folder types are no supported for this IO function");
         }
+        if (type == Type.LOG && resource.getRight() != null)
+        {
+            throw new InternalExpressionException("Log files cannot be stored in zip files");
+        }
         return new FileArgument(resource.getLeft(), type, resource.getRight(), isFolder, shared, reason, context.host);
 
     }
@@ -217,34 +216,37 @@ public class FileArgument
         {
             if (zfs == null)
             {
-                Map<String, String> env = new HashMap<>();
-                if (reason == Reason.CREATE)
-                {
-                    env.put("create", "true");
-                }
                 zipPath = resolve(getDescriptor(module, zipContainer));
-                if (!Files.exists(zipPath) && reason != Reason.CREATE)
-                {
-                    return null; // no zip file
-                }
                 try
                 {
-                    if (!Files.exists(zipPath.getParent()))
-                    {
-                        Files.createDirectories(zipPath.getParent());
-                    }
-                    zfs = FileSystems.newFileSystem(URI.create("jar:" + zipPath.toUri()), env);
+                    zfs = ZipFileSystems.get(zipPath, reason == Reason.CREATE, module == null ? null : module.name());
                 }
                 catch (FileSystemNotFoundException | IOException e)
                 {
                     CarpetScriptServer.LOG.warn("Exception when opening zip file", e);
                     throw new ThrowStatement("Unable to open zip file: " + zipContainer, Throwables.IO_EXCEPTION);
                 }
+                if (zfs == null)
+                {
+                    return null; // no zip file
+                }
             }
             return zfs.getPath(resource + (isFolder ? "/" : type.extension));
         }
     }
 
+    // files in a zip share the lock of the zip container
+    private Object lockFor(@Nullable Module module)
+    {
+        if (!isShared && module == null)
+        {
+            return this; // nothing to lock, there is no path for it
+        }
+        return zipContainer == null
+                ? FileWriteQueue.lockFor(resolve(getDescriptor(module, resource) + (isFolder ? "" : type.extension)))
+                : FileWriteQueue.lockFor(resolve(getDescriptor(module, zipContainer)));
+    }
+
     @Nullable
     private Path moduleRootPath(@Nullable Module module)
     {
@@ -276,7 +278,7 @@ public class FileArgument
     {
         try
         {
-            synchronized (writeIOSync)
+            synchronized (lockFor(module))
             {
                 Path dataFile = toPath(module);//, resourceName, supportedTypes.get(type), isShared);
                 if (dataFile == null)
@@ -322,7 +324,7 @@ public class FileArgument
         Stream<String> strings;
         try (Stream<Path> result = listFiles(module))
         {
-            synchronized (writeIOSync)
+            synchronized (lockFor(module))
             {
                 if (result == null)
                 {
@@ -373,13 +375,18 @@ public class FileArgument
     {
         try
         {
-            synchronized (writeIOSync)
+            synchronized (lockFor(module))
             {
                 Path dataFile = toPath(module);
                 if (dataFile == null)
                 {
                     return false;
                 }
+                if (type == Type.LOG)
+                {
+                    LogFiles.append(dataFile, message);
+                    return true;
+                }
                 createPaths(dataFile);
                 OutputStream out = Files.newOutputStream(dataFile, StandardOpenOption.APPEND, StandardOpenOption.CREATE);
                 try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)))
@@ -412,10 +419,19 @@ public class FileArgument
     {
         try
         {
-            synchronized (writeIOSync)
+            synchronized (lockFor(module))
             {
                 Path dataFile = toPath(module);
-                if (dataFile == null || !Files.exists(dataFile))
+                if (dataFile == null)
+                {
+                    return null;
+                }
+                Tag pending = FileWriteQueue.pendingTag(dataFile);
+                if (pending != null)
+                {
+                    return pending;
+                }
+                if (!Files.exists(dataFile))
                 {
                     return null;
                 }
@@ -483,7 +499,7 @@ public class FileArgument
     {
         try
         {
-            synchronized (writeIOSync)
+            synchronized (lockFor(module))
             {
                 Path dataFile = toPath(module);
                 if (dataFile == null)
@@ -491,7 +507,17 @@ public class FileArgument
                     return false;
                 }
                 createPaths(dataFile);
-                return writeTagDisk(tag, dataFile, zipContainer != null);
+                if (zipContainer == null)
+                {
+                    // the write itself happens later, so anything that would make it fail is reported now
+                    if (Files.isDirectory(dataFile) || !Files.isWritable(dataFile.getParent()) || (Files.exists(dataFile) && !Files.isWritable(dataFile)))
+                    {
+                        throw new ThrowStatement("Unable to write tag to " + dataFile, Throwables.IO_EXCEPTION);
+                    }
+                    FileWriteQueue.writeTag(tag, dataFile);
+                    return true;
+                }
+                return writeTagDisk(tag, dataFile, true);
             }
         }
         finally
@@ -530,8 +556,15 @@ public class FileArgument
             }
             if (!zipped)
             {
-                Files.deleteIfExists(original);
-                Files.move(path, original);
+                // readers never see a missing or half written file
+                try
+                {
+                    Files.move(path, original, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                catch (AtomicMoveNotSupportedException e)
+                {
+                    Files.move(path, original, StandardCopyOption.REPLACE_EXISTING);
+                }
             }
             return true;
         }
@@ -546,14 +579,19 @@ public class FileArgument
     {
         try
         {
-            synchronized (writeIOSync)
+            synchronized (lockFor(module))
             {
                 Path dataFile = toPath(module);
                 if (dataFile == null)
                 {
                     return false;
                 }
-                return Files.deleteIfExists(dataFile);
+                if (type == Type.LOG)
+                {
+                    LogFiles.close(dataFile);
+                }
+                boolean pending = FileWriteQueue.cancel(dataFile);
+                return Files.deleteIfExists(dataFile) || pending;
             }
         }
         catch (IOException e)
@@ -572,7 +610,7 @@ public class FileArgument
     {
         try
         {
-            synchronized (writeIOSync)
+            synchronized (lockFor(module))
             {
                 Path dataFile = toPath(module);
                 if (dataFile == null)
@@ -592,6 +630,36 @@ public class FileArgument
         }
     }
 
+    /**
+     * Records of a log file, read lazily as they are iterated over, up to the point the file was at when this got called
+     */
+    @Nullable
+    public LazyListValue readLogFile(Module module, Function<String, Value> parser)
+    {
+        try
+        {
+            synchronized (lockFor(module))
+            {
+                Path dataFile = toPath(module);
+                if (dataFile == null || !Files.exists(dataFile))
+                {
+                    return null;
+                }
+                LogFiles.flush(dataFile);
+                return LogFiles.reader(dataFile, Files.size(dataFile), parser);
+            }
+        }
+        catch (IOException e)
+        {
+            CarpetScriptServer.LOG.warn("IOException when reading log file", e);
+            throw new ThrowStatement("Failed to read log file " + getDisplayPath(), Throwables.IO_EXCEPTION);
+        }
+        finally
+        {
+            close();
+        }
+    }
+
     public static List<String> listFileContent(Path filePath)
     {
         try (BufferedReader reader = Files.newBufferedReader(filePath, StandardCharsets.UTF_8))
@@ -620,7 +688,7 @@ public class FileArgument
     {
         try
         {
-            synchronized (writeIOSync)
+            synchronized (lockFor(module))
             {
                 Path dataFile = toPath(module);
                 if (dataFile == null || !Files.exists(dataFile))
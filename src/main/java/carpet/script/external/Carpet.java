@@ -1,5 +1,6 @@
 package carpet.script.external;
 
+import carpet.CarpetExtension;
 import carpet.CarpetServer;
 import carpet.CarpetSettings;
 import carpet.api.settings.CarpetRule;
@@ -136,6 +137,35 @@ public class Carpet
         CarpetServer.extensions.forEach(e -> e.scarpetApi(expression));
     }
 
+    // set once an extension that adds its own functions registers, see extensionsAddScarpetApi
+    private static volatile boolean extensionsAddScarpetApi;
+
+    /**
+     * Checks once, when the extension registers, whether it overrides {@link CarpetExtension#scarpetApi}
+     */
+    public static void onExtensionAdded(CarpetExtension extension)
+    {
+        try
+        {
+            if (extension.getClass().getMethod("scarpetApi", CarpetExpression.class).getDeclaringClass() != CarpetExtension.class)
+            {
+                extensionsAddScarpetApi = true;
+            }
+        }
+        catch (NoSuchMethodException ignored)
+        {
+        }
+    }
+
+    /**
+     * Whether any extension adds its own functions to expressions. These could hold on to the source and origin
+     * of the expression they got registered on, so such expressions can't be reused for other sources
+     */
+    public static boolean extensionsAddScarpetApi()
+    {
+        return extensionsAddScarpetApi;
+    }
+
     public static boolean getFillUpdates()
     {
         return CarpetSettings.fillUpdates;
@@ -43,6 +43,7 @@ import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.Tag;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ChunkHolder;
 import net.minecraft.server.level.ChunkMap;
 import net.minecraft.server.level.DistanceManager;
 import net.minecraft.server.level.ServerLevel;
@@ -102,6 +103,11 @@ public class Vanilla
         //((ThreadedAnvilChunkStorageInterface) chunkMap).relightChunk(pos);
     }
 
+    public static Iterable<ChunkHolder> ChunkMap_getChunks(ChunkMap chunkMap)
+    {
+        return ((ThreadedAnvilChunkStorageInterface) chunkMap).getChunksCM();
+    }
+
     public static Map<String, Integer> ChunkMap_regenerateChunkRegion(ChunkMap chunkMap, List<ChunkPos> requestedChunks)
     {
         return Map.of(); //return ((ThreadedAnvilChunkStorageInterface) chunkMap).regenerateChunkRegion(requestedChunks);
@@ -322,6 +328,16 @@ public class Vanilla
         return CarpetSettings.scriptsOptimization;
     }
 
+    public static boolean ScriptServer_scriptCompilation(MinecraftServer server)
+    {
+        return CarpetSettings.scriptsCompilation;
+    }
+
+    public static int ScriptServer_taskWriteBudget(MinecraftServer server)
+    {
+        return CarpetSettings.scriptsTaskWriteBudget;
+    }
+
     public static boolean ScriptServer_scriptDebugging(MinecraftServer server)
     {
         return CarpetSettings.scriptsDebugging;
@@ -5,6 +5,7 @@ import carpet.script.Expression;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.value.BooleanValue;
 import carpet.script.value.ListValue;
+import carpet.script.value.NumericList;
 import carpet.script.value.NumericValue;
 import carpet.script.value.Value;
 
@@ -109,6 +110,10 @@ public class Arithmetic
             if (lv.size() == 1 && lv.get(0) instanceof ListValue)
             {
                 lv = ((ListValue) lv.get(0)).getItems();
+                if (lv instanceof NumericList nl)
+                {
+                    return nl.extreme(1);
+                }
             }
             for (Value parameter : lv)
             {
@@ -130,6 +135,10 @@ public class Arithmetic
             if (lv.size() == 1 && lv.get(0) instanceof ListValue)
             {
                 lv = ((ListValue) lv.get(0)).getItems();
+                if (lv instanceof NumericList nl)
+                {
+                    return nl.extreme(-1);
+                }
             }
             for (Value parameter : lv)
             {
@@ -13,6 +13,7 @@ import carpet.script.value.LContainerValue;
 import carpet.script.value.LazyListValue;
 import carpet.script.value.ListValue;
 import carpet.script.value.MapValue;
+import carpet.script.value.NumericList;
 import carpet.script.value.NumericValue;
 import carpet.script.value.StringValue;
 import carpet.script.value.Value;
@@ -96,6 +97,12 @@ public class DataStructures
 
         expression.addFunction("sort", lv ->
         {
+            if (lv.size() == 1 && lv.get(0) instanceof final ListValue llv && llv.getItems() instanceof final NumericList nl)
+            {
+                NumericList sorted = nl.copy();
+                sorted.sortNatural();
+                return ListValue.wrap(sorted);
+            }
             List<Value> toSort = lv;
             if (lv.size() == 1 && lv.get(0) instanceof final ListValue llv)
             {
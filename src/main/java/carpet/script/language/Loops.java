@@ -7,7 +7,9 @@ import carpet.script.exception.BreakStatement;
 import carpet.script.exception.ContinueStatement;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.value.AbstractListValue;
+import carpet.script.value.LazyListValue;
 import carpet.script.value.ListValue;
+import carpet.script.value.NumericList;
 import carpet.script.value.NumericValue;
 import carpet.script.value.Value;
 
@@ -159,7 +161,7 @@ public class Loops
         // receives bounded variable '_' with the expression
         expression.addLazyFunction("map", 2, (c, t, lv) ->
         {
-            Value rval = lv.get(0).evalValue(c, Context.NONE);
+            Value rval = lv.get(0).evalValue(c, Context.ITERATOR);
             if (rval.isNull())
             {
                 return ListValue.lazyEmpty();
@@ -168,6 +170,11 @@ public class Loops
             {
                 throw new InternalExpressionException("First argument of 'map' function should be a list or iterator");
             }
+            if (t == Context.ITERATOR && rval instanceof final LazyListValue source && lv.get(1) instanceof LazyValue.Pure)
+            {
+                Value ret = new FusedStage(c, lv.get(1), source, false);
+                return (cc, tt) -> ret;
+            }
             Iterator<Value> iterator = alv.iterator();
             LazyValue expr = lv.get(1);
             //scoping
@@ -181,19 +188,19 @@ public class Loops
                     continue;
                 }
                 String variable = next.boundVariable;
-                next.bindTo("_");
+                Value bound = next.bindTo("_");
                 int doYouReally = i;
-                c.setVariable("_", (cc, tt) -> next);
+                c.setVariable("_", (cc, tt) -> bound);
                 c.setVariable("_i", (cc, tt) -> new NumericValue(doYouReally).bindTo("_i"));
                 try
                 {
-                    result.add(expr.evalValue(c, t));
+                    result = NumericList.append(result, expr.evalValue(c, t));
                 }
                 catch (BreakStatement | ContinueStatement stmt)
                 {
                     if (stmt.retval != null)
                     {
-                        result.add(stmt.retval);
+                        result = NumericList.append(result, stmt.retval);
                     }
                     if (stmt instanceof BreakStatement)
                     {
@@ -216,7 +223,7 @@ public class Loops
         // produces list of values for which the expression is true
         expression.addLazyFunction("filter", 2, (c, t, lv) ->
         {
-            Value rval = lv.get(0).evalValue(c, Context.NONE);
+            Value rval = lv.get(0).evalValue(c, Context.ITERATOR);
             if (rval.isNull())
             {
                 return ListValue.lazyEmpty();
@@ -225,6 +232,11 @@ public class Loops
             {
                 throw new InternalExpressionException("First argument of 'filter' function should be a list or iterator");
             }
+            if (t == Context.ITERATOR && rval instanceof final LazyListValue source && lv.get(1) instanceof LazyValue.Pure)
+            {
+                Value ret = new FusedStage(c, lv.get(1), source, true);
+                return (cc, tt) -> ret;
+            }
             Iterator<Value> iterator = alv.iterator();
             LazyValue expr = lv.get(1);
             //scoping
@@ -238,9 +250,9 @@ public class Loops
                     continue;
                 }
                 String veriable = next.boundVariable;
-                next.bindTo("_");
+                Value bound = next.bindTo("_");
                 int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
+                c.setVariable("_", (cc, tt) -> bound);
                 c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
                 try
                 {
@@ -276,7 +288,7 @@ public class Loops
         // returns first element on the list for which the expr is true
         expression.addLazyFunction("first", 2, (c, t, lv) ->
         {
-            Value rval = lv.get(0).evalValue(c, Context.NONE);
+            Value rval = lv.get(0).evalValue(c, Context.ITERATOR);
             if (rval.isNull())
             {
                 return LazyValue.NULL;
@@ -298,9 +310,9 @@ public class Loops
                     continue;
                 }
                 String variable = next.boundVariable;
-                next.bindTo("_");
+                Value bound = next.bindTo("_");
                 int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
+                c.setVariable("_", (cc, tt) -> bound);
                 c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
                 try
                 {
@@ -336,7 +348,7 @@ public class Loops
         // returns true if expr is true for all items
         expression.addLazyFunction("all", 2, (c, t, lv) ->
         {
-            Value rval = lv.get(0).evalValue(c, Context.NONE);
+            Value rval = lv.get(0).evalValue(c, Context.ITERATOR);
             if (rval.isNull())
             {
                 return LazyValue.TRUE;
@@ -358,9 +370,9 @@ public class Loops
                     continue;
                 }
                 String variable = next.boundVariable;
-                next.bindTo("_");
+                Value bound = next.bindTo("_");
                 int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
+                c.setVariable("_", (cc, tt) -> bound);
                 c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
                 if (!expr.evalValue(c, Context.BOOLEAN).getBoolean())
                 {
@@ -409,7 +421,7 @@ public class Loops
         // can be substituted for first and all, but first is more efficient and all doesn't require knowing list size
         expression.addLazyFunction("for", 2, (c, t, lv) ->
         {
-            Value rval = lv.get(0).evalValue(c, Context.NONE);
+            Value rval = lv.get(0).evalValue(c, Context.ITERATOR);
             if (rval.isNull())
             {
                 return LazyValue.ZERO;
@@ -431,9 +443,9 @@ public class Loops
                     continue;
                 }
                 String variable = next.boundVariable;
-                next.bindTo("_");
+                Value bound = next.bindTo("_");
                 int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
+                c.setVariable("_", (cc, tt) -> bound);
                 c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
                 Value result = Value.FALSE;
                 try
@@ -474,7 +486,7 @@ public class Loops
         expression.addLazyFunction("reduce", 3, (c, t, lv) ->
         {
 
-            Value rval = lv.get(0).evalValue(c, Context.NONE);
+            Value rval = lv.get(0).evalValue(c, Context.ITERATOR);
             if (rval.isNull())
             {
                 return ListValue.lazyEmpty();
@@ -505,11 +517,11 @@ public class Loops
                     continue;
                 }
                 String variable = next.boundVariable;
-                next.bindTo("_");
+                Value bound = next.bindTo("_");
                 Value promiseWontChangeYou = acc;
                 int seriously = i;
                 c.setVariable("_a", (cc, tt) -> promiseWontChangeYou.bindTo("_a"));
-                c.setVariable("_", (cc, tt) -> next);
+                c.setVariable("_", (cc, tt) -> bound);
                 c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
                 try
                 {
@@ -539,4 +551,110 @@ public class Loops
             return (cc, tt) -> hopeItsEnoughPromise;
         });
     }
+
+    /**
+     * map or filter over a lazy source that is evaluated one element at a time as it is iterated.
+     * Functions that iterate over their first argument ask for it with {@link Context#ITERATOR},
+     * so chains like {@code first(filter(range(n), ...), ...)} run in a single pass without building intermediate lists.
+     * Only stages with {@link LazyValue.Pure} expressions are fused, since evaluating them interleaved with the consumer
+     * can't change the result.
+     */
+    private static final class FusedStage extends LazyListValue
+    {
+        private final Context c;
+        private final LazyValue expr;
+        private final LazyListValue source;
+        private final boolean filter;
+        private int index = 0;
+        private boolean done = false;
+        private Value pending = null;
+
+        FusedStage(Context c, LazyValue expr, LazyListValue source, boolean filter)
+        {
+            this.c = c;
+            this.expr = expr;
+            this.source = source;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (pending == null && !done)
+            {
+                if (!source.hasNext())
+                {
+                    done = true;
+                    break;
+                }
+                Value next = source.next();
+                if (next == Value.EOL)
+                {
+                    index++;
+                    continue;
+                }
+                pending = apply(next);
+            }
+            return pending != null;
+        }
+
+        @Override
+        public Value next()
+        {
+            if (!hasNext())
+            {
+                return Value.EOL;
+            }
+            Value ret = pending;
+            pending = null;
+            return ret;
+        }
+
+        private Value apply(Value next)
+        {
+            //scoping, restored after each element since the consumer has its own '_'
+            LazyValue defaultVal = c.getVariable("_");
+            LazyValue iterVal = c.getVariable("_i");
+            String variable = next.boundVariable;
+            Value bound = next.bindTo("_");
+            int seriously = index++;
+            c.setVariable("_", (cc, tt) -> bound);
+            c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+            try
+            {
+                if (filter)
+                {
+                    return expr.evalValue(c, Context.BOOLEAN).getBoolean() ? next : null;
+                }
+                return expr.evalValue(c, Context.NONE);
+            }
+            catch (BreakStatement | ContinueStatement stmt)
+            {
+                if (stmt instanceof BreakStatement)
+                {
+                    done = true;
+                }
+                if (filter)
+                {
+                    return stmt.retval != null && stmt.retval.getBoolean() ? next : null;
+                }
+                return stmt.retval;
+            }
+            finally
+            {
+                next.boundVariable = variable;
+                c.setVariable("_", defaultVal);
+                c.setVariable("_i", iterVal);
+            }
+        }
+
+        @Override
+        public void reset()
+        {
+            source.fatality();
+            index = 0;
+            done = false;
+            pending = null;
+        }
+    }
 }
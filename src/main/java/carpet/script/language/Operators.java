@@ -418,7 +418,7 @@ public class Operators
             String varname = v1.getVariable();
             Value copy = v2.reboundedTo(varname);
             LazyValue boundedLHS = (cc, tt) -> copy;
-            expression.setAnyVariable(c, varname, boundedLHS);
+            expression.setAnyVariable(c, lv1, varname, boundedLHS);
             return boundedLHS;
         });
 
@@ -488,7 +488,7 @@ public class Operators
                 Value result = v1.add(v2).bindTo(varname);
                 boundedLHS = (cc, tt) -> result;
             }
-            expression.setAnyVariable(c, varname, boundedLHS);
+            expression.setAnyVariable(c, lv1, varname, boundedLHS);
             return boundedLHS;
         });
 
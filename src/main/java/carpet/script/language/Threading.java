@@ -2,16 +2,38 @@ package carpet.script.language;
 
 import carpet.script.Context;
 import carpet.script.Expression;
+import carpet.script.TaskPool;
 import carpet.script.argument.FunctionArgument;
 import carpet.script.exception.ExitStatement;
 import carpet.script.exception.InternalExpressionException;
+import carpet.script.value.AbstractListValue;
 import carpet.script.value.BooleanValue;
+import carpet.script.value.FunctionValue;
+import carpet.script.value.ListValue;
+import carpet.script.value.NumericList;
 import carpet.script.value.NumericValue;
 import carpet.script.value.ThreadValue;
 import carpet.script.value.Value;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.IntConsumer;
+
 public class Threading
 {
+    private static final ForkJoinPool PARALLEL_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Scarpet parallel worker " + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+    // below that many elements splitting work between threads costs more than it saves
+    private static final int SEQUENTIAL_THRESHOLD = 64;
+
     public static void apply(Expression expression)
     {
         expression.addFunctionWithDelegation("task", -1, false, false, (c, t, expr, tok, lv) ->
@@ -41,7 +63,48 @@ public class Threading
 
 
         expression.addContextFunction("task_count", -1, (c, t, lv) ->
-                (!lv.isEmpty()) ? new NumericValue(c.host.taskCount(lv.get(0))) : new NumericValue(c.host.taskCount()));
+        {
+            if (lv.isEmpty())
+            {
+                return new NumericValue(c.host.taskCount());
+            }
+            if (lv.size() > 2)
+            {
+                throw new InternalExpressionException("'task_count' takes at most executor and task state");
+            }
+            String state = lv.size() == 2 ? lv.get(1).getString() : "running";
+            return switch (state)
+            {
+                case "running" -> new NumericValue(c.host.taskCount(lv.get(0)));
+                case "queued" -> new NumericValue(c.host.queuedTaskCount(lv.get(0)));
+                default -> throw new InternalExpressionException("Unknown task state '" + state + "', use 'running' or 'queued'");
+            };
+        });
+
+        expression.addContextFunction("task_pool", -1, (c, t, lv) ->
+        {
+            if (lv.size() < 2 || lv.size() > 3)
+            {
+                throw new InternalExpressionException("'task_pool' requires executor, thread type and optional limit of running tasks");
+            }
+            String type = lv.get(1).getString();
+            TaskPool.Kind kind = switch (type)
+            {
+                case "platform" -> TaskPool.Kind.PLATFORM;
+                case "virtual" -> TaskPool.Kind.VIRTUAL;
+                default -> throw new InternalExpressionException("Unknown thread type '" + type + "', use 'platform' or 'virtual'");
+            };
+            int limit = lv.size() == 3 && !lv.get(2).isNull() ? NumericValue.asNumber(lv.get(2)).getInt() : 0;
+            if (limit < 0)
+            {
+                throw new InternalExpressionException("Limit of running tasks cannot be negative");
+            }
+            if (!c.host.configureExecutor(lv.get(0), kind, limit))
+            {
+                throw new InternalExpressionException("Cannot change thread type of executor " + lv.get(0).getString() + " while it has tasks");
+            }
+            return Value.NULL;
+        });
 
         expression.addUnaryFunction("task_value", v ->
         {
@@ -177,6 +240,57 @@ public class Threading
             return ret == Value.EOL ? ((cc, tt) -> Value.NULL) : ((cc, tt) -> ret);
         });
 
+        // parallel versions of map, filter and reduce, for functions that can safely run on many threads at once
+        expression.addContextFunction("pmap", -1, (c, t, lv) ->
+        {
+            List<Value> items = parallelSource("pmap", lv);
+            FunctionArgument functionArgument = parallelFunction("pmap", c, expression, lv, 1);
+            Value[] results = new Value[items.size()];
+            forEachInParallel(items.size(), i -> results[i] = callWith(c, functionArgument, items.get(i)));
+            List<Value> mapped = results.length > 0 && results[0].getClass() == NumericValue.class ? new NumericList(results.length) : new ArrayList<>(results.length);
+            for (Value v : results)
+            {
+                mapped.add(v);
+            }
+            return ListValue.wrap(mapped);
+        });
+
+        expression.addContextFunction("pfilter", -1, (c, t, lv) ->
+        {
+            List<Value> items = parallelSource("pfilter", lv);
+            FunctionArgument functionArgument = parallelFunction("pfilter", c, expression, lv, 1);
+            boolean[] keep = new boolean[items.size()];
+            forEachInParallel(items.size(), i -> keep[i] = callWith(c, functionArgument, items.get(i)).getBoolean());
+            List<Value> filtered = new ArrayList<>();
+            for (int i = 0; i < keep.length; i++)
+            {
+                if (keep[i])
+                {
+                    filtered.add(items.get(i));
+                }
+            }
+            return ListValue.wrap(filtered);
+        });
+
+        expression.addContextFunction("preduce", 3, (c, t, lv) ->
+        {
+            List<Value> items = parallelSource("preduce", lv);
+            FunctionValue fun = parallelFunction("preduce", c, expression, lv.subList(0, 2), 2).function;
+            Value initial = lv.get(2);
+            if (items.isEmpty())
+            {
+                return initial;
+            }
+            BinaryOperator<Value> reducer = (acc, v) -> {
+                checkStopped(c);
+                return fun.callInContext(c, Context.NONE, List.of(acc, v)).evalValue(c);
+            };
+            Value reduced = items.size() < SEQUENTIAL_THRESHOLD
+                    ? new ParallelReduce(items, 0, items.size(), items.size(), reducer).compute()
+                    : PARALLEL_POOL.invoke(new ParallelReduce(items, 0, items.size(), leafSize(items.size()), reducer));
+            return reducer.apply(initial, reduced);
+        });
+
         expression.addLazyFunction("task_ready", 1, (c, t, lv) ->
         {
             Value threadValue = lv.get(0).evalValue(c);
@@ -188,4 +302,143 @@ public class Threading
             return (cc, tt) -> BooleanValue.of(ret);
         });
     }
+
+    private static List<Value> parallelSource(String name, List<Value> lv)
+    {
+        if (lv.size() < 2)
+        {
+            throw new InternalExpressionException("'" + name + "' requires a list and a function");
+        }
+        if (lv.get(0) instanceof final ListValue list)
+        {
+            return list.unpack();
+        }
+        if (lv.get(0) instanceof final AbstractListValue alv)
+        {
+            return alv.unpack();
+        }
+        throw new InternalExpressionException("First argument of '" + name + "' function should be a list or iterator");
+    }
+
+    private static FunctionArgument parallelFunction(String name, Context c, Expression expression, List<Value> lv, int passedArgs)
+    {
+        FunctionArgument functionArgument = FunctionArgument.findIn(c, expression.module, lv, 1, false, false);
+        if (!functionArgument.function.isParallelSafe())
+        {
+            throw new InternalExpressionException("'" + name + "' can only run functions that use pure built-in functions and their own local variables, "
+                    + functionArgument.function.getPrettyString() + " calls other functions, accesses the world, changes global state, "
+                    + "uses compound assignments on lists or maps, or captures lists or maps with outer");
+        }
+        functionArgument.function.checkArgs(functionArgument.args.size() + passedArgs);
+        return functionArgument;
+    }
+
+    /**
+     * Lets /script stop end long parallel calls, workers check it before each element
+     */
+    private static void checkStopped(Context c)
+    {
+        if (c.host.scriptServer().isStopped())
+        {
+            throw new ExitStatement(Value.NULL);
+        }
+    }
+
+    private static Value callWith(Context c, FunctionArgument functionArgument, Value element)
+    {
+        checkStopped(c);
+        List<Value> args = new ArrayList<>(functionArgument.args.size() + 1);
+        args.add(element);
+        args.addAll(functionArgument.args);
+        return functionArgument.function.callInContext(c, Context.NONE, args).evalValue(c);
+    }
+
+    private static int leafSize(int size)
+    {
+        return Math.max(SEQUENTIAL_THRESHOLD / 4, size / (PARALLEL_POOL.getParallelism() * 4));
+    }
+
+    private static void forEachInParallel(int size, IntConsumer action)
+    {
+        if (size < SEQUENTIAL_THRESHOLD)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                action.accept(i);
+            }
+            return;
+        }
+        PARALLEL_POOL.invoke(new ParallelRange(0, size, leafSize(size), action));
+    }
+
+    private static final class ParallelRange extends RecursiveAction
+    {
+        private final int from;
+        private final int to;
+        private final int leaf;
+        private final IntConsumer action;
+
+        ParallelRange(int from, int to, int leaf, IntConsumer action)
+        {
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= leaf)
+            {
+                for (int i = from; i < to; i++)
+                {
+                    action.accept(i);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ParallelRange(from, mid, leaf, action), new ParallelRange(mid, to, leaf, action));
+        }
+    }
+
+    /**
+     * Reduces each range separately and combines partial results in order, so the function has to be associative
+     */
+    private static final class ParallelReduce extends RecursiveTask<Value>
+    {
+        private final List<Value> items;
+        private final int from;
+        private final int to;
+        private final int leaf;
+        private final BinaryOperator<Value> reducer;
+
+        ParallelReduce(List<Value> items, int from, int to, int leaf, BinaryOperator<Value> reducer)
+        {
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+            this.reducer = reducer;
+        }
+
+        @Override
+        protected Value compute()
+        {
+            if (to - from <= leaf)
+            {
+                Value acc = items.get(from);
+                for (int i = from + 1; i < to; i++)
+                {
+                    acc = reducer.apply(acc, items.get(i));
+                }
+                return acc;
+            }
+            int mid = (from + to) >>> 1;
+            ParallelReduce left = new ParallelReduce(items, from, mid, leaf, reducer);
+            left.fork();
+            Value right = new ParallelReduce(items, mid, to, leaf, reducer).compute();
+            return reducer.apply(left.join(), right);
+        }
+    }
 }
@@ -0,0 +1,181 @@
+package carpet.script.utils;
+
+import carpet.script.external.Vanilla;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which chunks are stored in the region files of the worlds, read from the 4KB location table at the start of each
+ * region file. Tables are kept after the first read and dropped whenever the game saves or removes a chunk of that
+ * region, see {@link #invalidate}. The file's modification time and size are still checked, for region files changed
+ * by anything else.
+ */
+public class RegionHeaderIndex
+{
+    private static final int HEADER_SIZE = 4096;
+    private static final int CHUNKS = 1024;
+
+    // chunks present in a region file, as of its given modification time and size
+    private record Header(long modified, long size, BitSet chunks)
+    {
+        boolean has(int chunkX, int chunkZ)
+        {
+            return chunks.get((chunkX & 31) + (chunkZ & 31) * 32);
+        }
+    }
+
+    private static final Header UNREADABLE = new Header(-1, -1, fullSet());
+    private static final Map<Path, Header> headers = new ConcurrentHashMap<>();
+
+    private static BitSet fullSet()
+    {
+        BitSet all = new BitSet(CHUNKS);
+        all.set(0, CHUNKS);
+        return all;
+    }
+
+    private static Path regionFolder(ServerLevel world)
+    {
+        return Vanilla.MinecraftServer_storageSource(world.getServer()).getDimensionPath(world.dimension()).resolve("region");
+    }
+
+    private static Path regionFile(Path folder, int regionX, int regionZ)
+    {
+        return folder.resolve("r." + regionX + "." + regionZ + ".mca").toAbsolutePath().normalize();
+    }
+
+    /**
+     * Called by the region file after it wrote or cleared a chunk, so the next lookup reads its table again
+     */
+    public static void invalidate(Path file)
+    {
+        if (!headers.isEmpty())
+        {
+            headers.remove(file.toAbsolutePath().normalize());
+        }
+    }
+
+    /**
+     * Location table of the region file, or null if there is no such file.
+     * Files that can't be read count as having all their chunks
+     */
+    @Nullable
+    private static Header header(Path file)
+    {
+        BasicFileAttributes attributes;
+        try
+        {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        }
+        catch (NoSuchFileException ignored)
+        {
+            headers.remove(file);
+            return null;
+        }
+        catch (IOException ignored)
+        {
+            return UNREADABLE;
+        }
+        long modified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        // reading inside compute, so an invalidate from a save that lands midway waits and drops the result
+        return headers.compute(file, (f, cached) -> cached != null && cached.modified() == modified && cached.size() == size
+                ? cached
+                : readHeader(f, modified, size));
+    }
+
+    private static Header readHeader(Path file, long modified, long size)
+    {
+        ByteBuffer table = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            while (table.hasRemaining() && channel.read(table) >= 0)
+            {
+                // reading until the table is full or the file ends
+            }
+        }
+        catch (IOException ignored)
+        {
+            return UNREADABLE;
+        }
+        table.flip();
+        BitSet chunks = new BitSet(CHUNKS);
+        for (int i = 0; i < CHUNKS && table.remaining() >= 4; i++)
+        {
+            if (table.getInt() != 0)
+            {
+                chunks.set(i);
+            }
+        }
+        return new Header(modified, size, chunks);
+    }
+
+    public static boolean hasRegion(ServerLevel world, int regionX, int regionZ)
+    {
+        return Files.exists(regionFile(regionFolder(world), regionX, regionZ));
+    }
+
+    /**
+     * Whether the chunk is saved in its region file
+     */
+    public static boolean hasChunk(ServerLevel world, ChunkPos pos)
+    {
+        Header header = header(regionFile(regionFolder(world), pos.getRegionX(), pos.getRegionZ()));
+        return header != null && header.has(pos.x, pos.z);
+    }
+
+    public interface ChunkConsumer
+    {
+        void accept(int chunkX, int chunkZ);
+    }
+
+    /**
+     * Calls the action for every chunk in the area that is saved in a region file, region by region
+     */
+    public static void forEachSavedChunk(ServerLevel world, ChunkPos from, ChunkPos to, ChunkConsumer action)
+    {
+        Path folder = regionFolder(world);
+        int minX = Math.min(from.x, to.x);
+        int minZ = Math.min(from.z, to.z);
+        int maxX = Math.max(from.x, to.x);
+        int maxZ = Math.max(from.z, to.z);
+        for (int regionX = minX >> 5; regionX <= maxX >> 5; regionX++)
+        {
+            for (int regionZ = minZ >> 5; regionZ <= maxZ >> 5; regionZ++)
+            {
+                Header header = header(regionFile(folder, regionX, regionZ));
+                if (header == null || header.chunks().isEmpty())
+                {
+                    continue;
+                }
+                int fromX = Math.max(minX, regionX << 5);
+                int toX = Math.min(maxX, (regionX << 5) + 31);
+                int fromZ = Math.max(minZ, regionZ << 5);
+                int toZ = Math.min(maxZ, (regionZ << 5) + 31);
+                for (int chunkZ = fromZ; chunkZ <= toZ; chunkZ++)
+                {
+                    for (int chunkX = fromX; chunkX <= toX; chunkX++)
+                    {
+                        if (header.has(chunkX, chunkZ))
+                        {
+                            action.accept(chunkX, chunkZ);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package carpet.script.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for a call of an app function from an event handler, a signal or a schedule,
+ * to see in recordings which apps take up the tick time
+ */
+@Name("carpet.ScarpetCall")
+@Label("Scarpet Call")
+@Category({"Carpet", "Scarpet"})
+@Description("Call of an app function by an event, a signal or a schedule")
+@StackTrace(false)
+public final class ScarpetCallEvent extends Event
+{
+    @Label("Kind")
+    @Description("event or schedule")
+    public String kind;
+    @Label("App")
+    public String app;
+    @Label("Function")
+    public String function;
+    @Label("Target Player")
+    public String target;
+}
@@ -2,6 +2,7 @@ package carpet.script.utils;
 
 import carpet.script.CarpetContext;
 import carpet.script.CarpetScriptHost;
+import carpet.script.ExpressionCache;
 import carpet.script.external.Carpet;
 import carpet.script.external.Vanilla;
 import carpet.script.value.BooleanValue;
@@ -185,6 +186,15 @@ public class SystemInfo
             return ListValue.of(new NumericValue(rotation.x), new NumericValue(rotation.y));
         });
         put("scarpet_version", c -> StringValue.of(Carpet.getCarpetVersion()));
+        put("scarpet_expression_cache", c -> {
+            ExpressionCache cache = ((CarpetScriptHost) c.host).scriptServer().expressionCache;
+            Map<Value, Value> stats = new HashMap<>();
+            stats.put(StringValue.of("hits"), NumericValue.of(cache.hits()));
+            stats.put(StringValue.of("misses"), NumericValue.of(cache.misses()));
+            stats.put(StringValue.of("size"), NumericValue.of(cache.size()));
+            stats.put(StringValue.of("capacity"), NumericValue.of(ExpressionCache.CAPACITY));
+            return MapValue.wrap(stats);
+        });
     }};
 
     public static Value get(String what, CarpetContext cc)
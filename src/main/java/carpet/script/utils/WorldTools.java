@@ -2,6 +2,8 @@ package carpet.script.utils;
 
 //import carpet.fakes.MinecraftServerInterface;
 import carpet.script.external.Vanilla;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 //import net.fabricmc.api.EnvType;
 //import net.fabricmc.api.Environment;
 import net.minecraft.Util;
@@ -9,10 +11,12 @@ import net.minecraft.core.BlockPos;
 import net.minecraft.core.Holder;
 import net.minecraft.core.MappedRegistry;
 import net.minecraft.core.Registry;
+import net.minecraft.core.SectionPos;
 import net.minecraft.network.protocol.game.ClientboundLevelChunkWithLightPacket;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ChunkHolder;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.server.level.progress.ChunkProgressListener;
@@ -21,75 +25,66 @@ import net.minecraft.world.level.CustomSpawner;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.biome.BiomeManager;
 import net.minecraft.world.level.biome.MultiNoiseBiomeSource;
+import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.border.BorderChangeListener;
 import net.minecraft.world.level.chunk.ChunkGenerator;
 import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
 import net.minecraft.world.level.chunk.status.ChunkStatus;
-import net.minecraft.world.level.chunk.storage.RegionFile;
-import net.minecraft.world.level.chunk.storage.RegionStorageInfo;
 import net.minecraft.world.level.dimension.DimensionType;
 import net.minecraft.world.level.dimension.LevelStem;
+import net.minecraft.world.level.levelgen.Heightmap;
 import net.minecraft.world.level.levelgen.NoiseBasedChunkGenerator;
 import net.minecraft.world.level.levelgen.NoiseGeneratorSettings;
 import net.minecraft.world.level.levelgen.WorldGenSettings;
+import net.minecraft.world.level.lighting.LevelLightEngine;
+import net.minecraft.world.level.lighting.LightEngine;
 import net.minecraft.world.level.storage.DerivedLevelData;
 import net.minecraft.world.level.storage.ServerLevelData;
 
 import javax.annotation.Nullable;
-import java.io.IOException;
-import java.nio.file.Path;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
 public class WorldTools
 {
 
-    public static boolean canHasChunk(ServerLevel world, ChunkPos chpos, @Nullable Map<String, RegionFile> regionCache, boolean deepcheck)
+    public static boolean canHasChunk(ServerLevel world, ChunkPos chpos, boolean deepcheck)
     {
         if (world.getChunk(chpos.x, chpos.z, ChunkStatus.STRUCTURE_STARTS, false) != null)
         {
             return true;
         }
-        String currentRegionName = "r." + chpos.getRegionX() + "." + chpos.getRegionZ() + ".mca";
-        if (regionCache != null && regionCache.containsKey(currentRegionName))
-        {
-            RegionFile region = regionCache.get(currentRegionName);
-            if (region == null)
-            {
-                return false;
-            }
-            return region.hasChunk(chpos);
-        }
-        Path regionsFolder = Vanilla.MinecraftServer_storageSource(world.getServer()).getDimensionPath(world.dimension()).resolve("region");
-        Path regionPath = regionsFolder.resolve(currentRegionName);
-        if (!regionPath.toFile().exists())
-        {
-            if (regionCache != null)
-            {
-                regionCache.put(currentRegionName, null);
-            }
-            return false;
-        }
-        if (!deepcheck)
-        {
-            return true; // not using cache in this case.
-        }
-        try
+        return deepcheck
+                ? RegionHeaderIndex.hasChunk(world, chpos)
+                : RegionHeaderIndex.hasRegion(world, chpos.getRegionX(), chpos.getRegionZ());
+    }
+
+    /**
+     * Chunks in the area that are generated, either saved in region files or held in memory, as packed chunk positions
+     */
+    public static LongSet generatedChunks(ServerLevel world, ChunkPos from, ChunkPos to)
+    {
+        LongSet chunks = new LongOpenHashSet();
+        RegionHeaderIndex.forEachSavedChunk(world, from, to, (x, z) -> chunks.add(ChunkPos.asLong(x, z)));
+        int minX = Math.min(from.x, to.x);
+        int minZ = Math.min(from.z, to.z);
+        int maxX = Math.max(from.x, to.x);
+        int maxZ = Math.max(from.z, to.z);
+        // chunks generated since they were last saved, going through what's loaded rather than the whole area
+        // status comes from the holder, since looking chunks up through the world only works on the server thread
+        for (ChunkHolder holder : Vanilla.ChunkMap_getChunks(world.getChunkSource().chunkMap))
         {
-            RegionStorageInfo levelStorageInfo = new RegionStorageInfo(Vanilla.MinecraftServer_storageSource(world.getServer()).getLevelId(), world.dimension(), "chunk");
-            RegionFile region = new RegionFile(levelStorageInfo, regionPath, regionsFolder, true);
-            if (regionCache != null)
+            ChunkPos pos = holder.getPos();
+            ChunkStatus status = holder.getLatestStatus();
+            if (pos.x >= minX && pos.x <= maxX && pos.z >= minZ && pos.z <= maxZ
+                    && status != null && status.isOrAfter(ChunkStatus.STRUCTURE_STARTS))
             {
-                regionCache.put(currentRegionName, region);
+                chunks.add(pos.toLong());
             }
-            return region.hasChunk(chpos);
         }
-        catch (IOException ignored)
-        {
-        }
-        return true;
+        return chunks;
     }
 /*
     public static boolean createWorld(MinecraftServer server, String worldKey, Long seed)
@@ -173,6 +168,108 @@ public class WorldTools
         }
     }
 
+    private static final Heightmap.Types[] UPDATED_HEIGHTMAPS = {
+            Heightmap.Types.MOTION_BLOCKING, Heightmap.Types.MOTION_BLOCKING_NO_LEAVES,
+            Heightmap.Types.OCEAN_FLOOR, Heightmap.Types.WORLD_SURFACE
+    };
+
+    @FunctionalInterface
+    public interface StateSource
+    {
+        /**
+         * State to put at the position, or null to leave it as is
+         */
+        @Nullable
+        BlockState get(int x, int y, int z);
+    }
+
+    /**
+     * Sets blocks in a box straight in the chunk sections, going chunk by chunk. Unlike setting blocks one by one
+     * it skips neighbour and shape updates and placement callbacks, and removes block entities without dropping
+     * their contents. Light checks are only queued for blocks that change how light passes, and clients get
+     * the changes batched per section at the end of the tick.
+     *
+     * @return number of blocks that changed
+     */
+    public static int setBlocks(ServerLevel world, BlockPos from, BlockPos to, StateSource states)
+    {
+        LevelLightEngine lightEngine = world.getChunkSource().getLightEngine();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        int changed = 0;
+        for (int cx = SectionPos.blockToSectionCoord(from.getX()); cx <= SectionPos.blockToSectionCoord(to.getX()); cx++)
+        {
+            for (int cz = SectionPos.blockToSectionCoord(from.getZ()); cz <= SectionPos.blockToSectionCoord(to.getZ()); cz++)
+            {
+                LevelChunk chunk = world.getChunk(cx, cz);
+                int minX = Math.max(from.getX(), SectionPos.sectionToBlockCoord(cx));
+                int maxX = Math.min(to.getX(), SectionPos.sectionToBlockCoord(cx, 15));
+                int minZ = Math.max(from.getZ(), SectionPos.sectionToBlockCoord(cz));
+                int maxZ = Math.min(to.getZ(), SectionPos.sectionToBlockCoord(cz, 15));
+                int changedBefore = changed;
+                for (int y = from.getY(); y <= to.getY(); y++)
+                {
+                    if (world.isOutsideBuildHeight(y))
+                    {
+                        continue;
+                    }
+                    LevelChunkSection section = chunk.getSection(chunk.getSectionIndex(y));
+                    for (int z = minZ; z <= maxZ; z++)
+                    {
+                        for (int x = minX; x <= maxX; x++)
+                        {
+                            BlockState state = states.get(x, y, z);
+                            if (state == null)
+                            {
+                                continue;
+                            }
+                            boolean wasEmpty = section.hasOnlyAir();
+                            if (wasEmpty && state.isAir())
+                            {
+                                continue;
+                            }
+                            BlockState previous = section.setBlockState(x & 15, y & 15, z & 15, state, false);
+                            if (previous == state)
+                            {
+                                continue;
+                            }
+                            changed++;
+                            pos.set(x, y, z);
+                            for (Heightmap.Types type : UPDATED_HEIGHTMAPS)
+                            {
+                                chunk.getOrCreateHeightmapUnprimed(type).update(x & 15, y, z & 15, state);
+                            }
+                            boolean isEmpty = section.hasOnlyAir();
+                            if (wasEmpty != isEmpty)
+                            {
+                                lightEngine.updateSectionStatus(pos, isEmpty);
+                            }
+                            if (LightEngine.hasDifferentLightProperties(previous, state))
+                            {
+                                chunk.getSkyLightSources().update(chunk, x & 15, y, z & 15);
+                                lightEngine.checkBlock(pos);
+                            }
+                            if (previous.hasBlockEntity())
+                            {
+                                chunk.removeBlockEntity(pos);
+                            }
+                            if (state.hasBlockEntity())
+                            {
+                                chunk.getBlockEntity(pos, LevelChunk.EntityCreationType.IMMEDIATE);
+                            }
+                            world.onBlockStateChange(pos, previous, state);
+                            world.getChunkSource().blockChanged(pos);
+                        }
+                    }
+                }
+                if (changed != changedBefore)
+                {
+                    chunk.setUnsaved(true);
+                }
+            }
+        }
+        return changed;
+    }
+
 /*
     private static class NoopWorldGenerationProgressListener implements ChunkProgressListener
     {
@@ -0,0 +1,325 @@
+package carpet.script.value;
+
+import carpet.script.exception.InternalExpressionException;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.IntArrayTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+
+/**
+ * Snapshot of block states in a box, stored as a palette of distinct states and a palette index for each position,
+ * read directly from chunk sections. Queries over it run without creating a block value for every position.
+ */
+public class BlockRegionValue extends Value
+{
+    // 256 by 256 by 256 blocks, or 32MB of palette indices
+    public static final int MAX_VOLUME = 1 << 24;
+
+    private final ServerLevel world;
+    private final BlockPos from;
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    private final BlockState[] palette;
+    // palette index for every position, x changing fastest, then z, then y
+    private final char[] indices;
+
+    private BlockRegionValue(ServerLevel world, BlockPos from, int sizeX, int sizeY, int sizeZ, BlockState[] palette, char[] indices)
+    {
+        this.world = world;
+        this.from = from;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.palette = palette;
+        this.indices = indices;
+    }
+
+    public static BlockRegionValue read(ServerLevel world, BlockPos pos1, BlockPos pos2)
+    {
+        BlockPos from = new BlockPos(Math.min(pos1.getX(), pos2.getX()), Math.min(pos1.getY(), pos2.getY()), Math.min(pos1.getZ(), pos2.getZ()));
+        BlockPos to = new BlockPos(Math.max(pos1.getX(), pos2.getX()), Math.max(pos1.getY(), pos2.getY()), Math.max(pos1.getZ(), pos2.getZ()));
+        int sizeX = to.getX() - from.getX() + 1;
+        int sizeY = to.getY() - from.getY() + 1;
+        int sizeZ = to.getZ() - from.getZ() + 1;
+        long volume = (long) sizeX * sizeY * sizeZ;
+        if (volume > MAX_VOLUME)
+        {
+            throw new InternalExpressionException("Region of " + volume + " blocks is too large to read at once, 'block_region' can read up to " + MAX_VOLUME + " blocks");
+        }
+        char[] indices = new char[(int) volume];
+        List<BlockState> palette = new ArrayList<>();
+        Reference2IntOpenHashMap<BlockState> paletteIndex = new Reference2IntOpenHashMap<>();
+        paletteIndex.defaultReturnValue(-1);
+
+        BlockState lastState = null;
+        int lastIndex = 0;
+        for (int cx = SectionPos.blockToSectionCoord(from.getX()); cx <= SectionPos.blockToSectionCoord(to.getX()); cx++)
+        {
+            for (int cz = SectionPos.blockToSectionCoord(from.getZ()); cz <= SectionPos.blockToSectionCoord(to.getZ()); cz++)
+            {
+                ChunkAccess chunk = world.getChunk(cx, cz);
+                int minX = Math.max(from.getX(), SectionPos.sectionToBlockCoord(cx));
+                int maxX = Math.min(to.getX(), SectionPos.sectionToBlockCoord(cx, 15));
+                int minZ = Math.max(from.getZ(), SectionPos.sectionToBlockCoord(cz));
+                int maxZ = Math.min(to.getZ(), SectionPos.sectionToBlockCoord(cz, 15));
+                PalettedContainer<BlockState> states = null;
+                // set when the whole section is one state, like all air, so its rows are filled without reading blocks
+                BlockState uniformState = null;
+                int statesSection = Integer.MIN_VALUE;
+                for (int y = from.getY(); y <= to.getY(); y++)
+                {
+                    if (world.isOutsideBuildHeight(y))
+                    {
+                        states = null;
+                        statesSection = Integer.MIN_VALUE;
+                        uniformState = Blocks.VOID_AIR.defaultBlockState();
+                    }
+                    else if (SectionPos.blockToSectionCoord(y) != statesSection)
+                    {
+                        statesSection = SectionPos.blockToSectionCoord(y);
+                        LevelChunkSection section = chunk.getSection(chunk.getSectionIndex(y));
+                        states = section.getStates();
+                        BlockState first = states.get(0, 0, 0);
+                        uniformState = states.maybeHas(s -> s != first) ? null : first;
+                    }
+                    for (int z = minZ; z <= maxZ; z++)
+                    {
+                        int offset = ((y - from.getY()) * sizeZ + (z - from.getZ())) * sizeX - from.getX();
+                        if (uniformState != null)
+                        {
+                            if (uniformState != lastState)
+                            {
+                                lastIndex = paletteIndexOf(uniformState, palette, paletteIndex);
+                                lastState = uniformState;
+                            }
+                            Arrays.fill(indices, offset + minX, offset + maxX + 1, (char) lastIndex);
+                            continue;
+                        }
+                        for (int x = minX; x <= maxX; x++)
+                        {
+                            BlockState state = states.get(x & 15, y & 15, z & 15);
+                            if (state != lastState)
+                            {
+                                lastIndex = paletteIndexOf(state, palette, paletteIndex);
+                                lastState = state;
+                            }
+                            indices[offset + x] = (char) lastIndex;
+                        }
+                    }
+                }
+            }
+        }
+        return new BlockRegionValue(world, from, sizeX, sizeY, sizeZ, palette.toArray(new BlockState[0]), indices);
+    }
+
+    private static int paletteIndexOf(BlockState state, List<BlockState> palette, Reference2IntOpenHashMap<BlockState> paletteIndex)
+    {
+        int index = paletteIndex.getInt(state);
+        if (index < 0)
+        {
+            index = palette.size();
+            if (index > Character.MAX_VALUE)
+            {
+                throw new InternalExpressionException("Region has too many different block states");
+            }
+            palette.add(state);
+            paletteIndex.put(state, index);
+        }
+        return index;
+    }
+
+    public BlockPos from()
+    {
+        return from;
+    }
+
+    public BlockPos to()
+    {
+        return from.offset(sizeX - 1, sizeY - 1, sizeZ - 1);
+    }
+
+    public List<BlockState> palette()
+    {
+        return List.of(palette);
+    }
+
+    private BlockPos posAt(int i)
+    {
+        int x = i % sizeX;
+        int z = (i / sizeX) % sizeZ;
+        int y = i / (sizeX * sizeZ);
+        return from.offset(x, y, z);
+    }
+
+    /**
+     * Block state at a position, or null if it is outside of the region
+     */
+    public BlockState getState(BlockPos pos)
+    {
+        return getState(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    public BlockState getState(int worldX, int worldY, int worldZ)
+    {
+        int x = worldX - from.getX();
+        int y = worldY - from.getY();
+        int z = worldZ - from.getZ();
+        if (x < 0 || y < 0 || z < 0 || x >= sizeX || y >= sizeY || z >= sizeZ)
+        {
+            return null;
+        }
+        return palette[indices[(y * sizeZ + z) * sizeX + x]];
+    }
+
+    /**
+     * Number of positions for each palette entry
+     */
+    public Map<BlockState, Integer> countStates()
+    {
+        int[] counts = new int[palette.length];
+        for (char index : indices)
+        {
+            counts[index]++;
+        }
+        Map<BlockState, Integer> result = new HashMap<>();
+        for (int i = 0; i < palette.length; i++)
+        {
+            result.put(palette[i], counts[i]);
+        }
+        return result;
+    }
+
+    public int count(Predicate<BlockState> matching)
+    {
+        boolean[] matches = matchingPalette(matching);
+        if (matches == null)
+        {
+            return 0;
+        }
+        int count = 0;
+        for (char index : indices)
+        {
+            if (matches[index])
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public List<BlockPos> find(Predicate<BlockState> matching)
+    {
+        boolean[] matches = matchingPalette(matching);
+        List<BlockPos> result = new ArrayList<>();
+        if (matches == null)
+        {
+            return result;
+        }
+        for (int i = 0; i < indices.length; i++)
+        {
+            if (matches[indices[i]])
+            {
+                result.add(posAt(i));
+            }
+        }
+        return result;
+    }
+
+    // which palette entries match, or null if none, so the indices don't need to be scanned at all
+    private boolean[] matchingPalette(Predicate<BlockState> matching)
+    {
+        boolean[] matches = new boolean[palette.length];
+        boolean any = false;
+        for (int i = 0; i < palette.length; i++)
+        {
+            matches[i] = matching.test(palette[i]);
+            any |= matches[i];
+        }
+        return any ? matches : null;
+    }
+
+    public ServerLevel getWorld()
+    {
+        return world;
+    }
+
+    @Override
+    public String getString()
+    {
+        return "block_region[" + sizeX + "x" + sizeY + "x" + sizeZ + " from " + from.getX() + ", " + from.getY() + ", " + from.getZ() + "]";
+    }
+
+    @Override
+    public boolean getBoolean()
+    {
+        return true;
+    }
+
+    @Override
+    public String getTypeString()
+    {
+        return "block_region";
+    }
+
+    @Override
+    public int length()
+    {
+        return indices.length;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        return o == this;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    public Tag toTag(boolean force, RegistryAccess regs)
+    {
+        if (!force)
+        {
+            throw new NBTSerializableValue.IncompatibleTypeException(this);
+        }
+        CompoundTag tag = new CompoundTag();
+        tag.put("From", new IntArrayTag(new int[]{from.getX(), from.getY(), from.getZ()}));
+        tag.put("Size", new IntArrayTag(new int[]{sizeX, sizeY, sizeZ}));
+        ListTag paletteTag = new ListTag();
+        for (BlockState state : palette)
+        {
+            paletteTag.add(new BlockValue(state, world, (BlockPos) null).toTag(true, regs));
+        }
+        tag.put("Palette", paletteTag);
+        int[] blocks = new int[indices.length];
+        for (int i = 0; i < indices.length; i++)
+        {
+            blocks[i] = indices[i];
+        }
+        tag.put("Blocks", new IntArrayTag(blocks));
+        return tag;
+    }
+}
@@ -4,6 +4,7 @@ import carpet.script.CarpetContext;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ThrowStatement;
 import carpet.script.exception.Throwables;
+import carpet.script.external.Vanilla;
 
 import com.mojang.brigadier.StringReader;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
@@ -26,6 +27,7 @@ import net.minecraft.core.registries.Registries;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.StringTag;
 import net.minecraft.nbt.Tag;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.InteractionHand;
 import net.minecraft.world.item.ItemStack;
@@ -108,12 +110,25 @@ public class BlockValue extends Value
         }
         if (pos != null)
         {
+            applyQueuedWrites();
             blockState = world.getBlockState(pos);
             return blockState;
         }
         throw new InternalExpressionException("Attempted to fetch block state without world or stored block state");
     }
 
+    /**
+     * App tasks can have block changes queued that aren't in the world yet, these have to go first
+     */
+    private void applyQueuedWrites()
+    {
+        MinecraftServer server = world.getServer();
+        if (!server.isSameThread())
+        {
+            Vanilla.MinecraftServer_getScriptServer(server).worldWrites.applyQueued();
+        }
+    }
+
     public static BlockEntity getBlockEntity(Level level, BlockPos pos)
     {
         if (level instanceof final ServerLevel serverLevel)
@@ -134,6 +149,7 @@ public class BlockValue extends Value
         }
         if (pos != null)
         {
+            applyQueuedWrites();
             BlockEntity be = getBlockEntity(world, pos);
             if (be == null)
             {
@@ -34,10 +34,14 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
     private Map<String, LazyValue> outerState;
     private final List<String> args;
     private final String varArgs;
+    @Nullable
+    private final Context.Scope scope;
+    // frame slots of the arguments, -1 for the ones bound by name
+    private final int[] argSlots;
     private static long variantCounter = 1;
     private long variant;
 
-    private FunctionValue(Expression expression, Tokenizer.Token token, String name, LazyValue body, List<String> args, String varArgs)
+    private FunctionValue(Expression expression, Tokenizer.Token token, String name, LazyValue body, List<String> args, String varArgs, @Nullable Context.Scope scope)
     {
         this.expression = expression;
         this.token = token;
@@ -45,11 +49,18 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         this.body = body;
         this.args = args;
         this.varArgs = varArgs;
+        this.scope = scope;
+        this.argSlots = slotsOf(args, scope);
         this.outerState = null;
         variant = 0L;
     }
 
     public FunctionValue(Expression expression, Tokenizer.Token token, String name, LazyValue body, List<String> args, String varArgs, Map<String, LazyValue> outerState)
+    {
+        this(expression, token, name, body, args, varArgs, outerState, null);
+    }
+
+    public FunctionValue(Expression expression, Tokenizer.Token token, String name, LazyValue body, List<String> args, String varArgs, Map<String, LazyValue> outerState, @Nullable Context.Scope scope)
     {
         this.expression = expression;
         this.token = token;
@@ -57,10 +68,22 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         this.body = body;
         this.args = args;
         this.varArgs = varArgs;
+        this.scope = scope;
+        this.argSlots = slotsOf(args, scope);
         this.outerState = outerState;
         variant = variantCounter++;
     }
 
+    private static int[] slotsOf(List<String> args, @Nullable Context.Scope scope)
+    {
+        int[] slots = new int[args.size()];
+        for (int i = 0; i < slots.length; i++)
+        {
+            slots[i] = scope == null ? -1 : scope.slotOf(args.get(i));
+        }
+        return slots;
+    }
+
     @Override
     public String getString()
     {
@@ -98,7 +121,7 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
     @Override
     protected Value clone()
     {
-        FunctionValue ret = new FunctionValue(expression, token, name, body, args, varArgs);
+        FunctionValue ret = new FunctionValue(expression, token, name, body, args, varArgs, scope);
         ret.outerState = this.outerState;
         ret.variant = this.variant;
         return ret;
@@ -239,7 +262,7 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
                             ". Should be at least " + args.size() + ", not " + params.size() + " like " + argList
             );
         });
-        Context newFrame = c.recreate();
+        Context newFrame = c.recreate(scope);
         if (freshNewCallingThread != null)
         {
             newFrame.setThreadContext(freshNewCallingThread);
@@ -253,7 +276,14 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         {
             String arg = args.get(i);
             Value val = params.get(i).reboundedTo(arg); // todo check if we need to copy that
-            newFrame.setVariable(arg, (cc, tt) -> val);
+            if (argSlots[i] >= 0)
+            {
+                newFrame.setLocal(argSlots[i], (cc, tt) -> val);
+            }
+            else
+            {
+                newFrame.setVariable(arg, (cc, tt) -> val);
+            }
         }
         if (varArgs != null)
         {
@@ -269,7 +299,8 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         Value retVal;
         try
         {
-            retVal = body.evalValue(newFrame, type); // todo not sure if we need to propagete type / consider boolean context in defined functions - answer seems ye
+            // a lazy stage returned from the body would outlive its frame, so the caller gets a real list
+            retVal = body.evalValue(newFrame, type == Context.ITERATOR ? Context.NONE : type); // todo not sure if we need to propagete type / consider boolean context in defined functions - answer seems ye
         }
         catch (BreakStatement | ContinueStatement exc)
         {
@@ -283,6 +314,30 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         return (cc, tt) -> otherRetVal;
     }
 
+    /**
+     * Whether the function can be called from several threads at once, see {@link Context.Scope#isParallelSafe()}.
+     * Values captured with outer are shared by all the calls, so they also need to be numbers, strings or null
+     */
+    public boolean isParallelSafe()
+    {
+        if (scope == null || !scope.isParallelSafe())
+        {
+            return false;
+        }
+        if (outerState != null)
+        {
+            for (LazyValue captured : outerState.values())
+            {
+                Value value = captured.evalValue(null);
+                if (!(value instanceof NumericValue || value instanceof StringValue || value.isNull()))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     public Expression getExpression()
     {
         return expression;
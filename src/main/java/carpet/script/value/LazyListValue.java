@@ -84,7 +84,7 @@ public abstract class LazyListValue extends AbstractListValue implements Iterato
             @Override
             public Value next()
             {
-                Value val = new NumericValue(current);
+                Value val = NumericValue.of(current);
                 current += stepp;
                 return val;
             }
@@ -138,12 +138,14 @@ public abstract class LazyListValue extends AbstractListValue implements Iterato
     public List<Value> unroll()
     {
         List<Value> result = new ArrayList<>();
-        this.forEachRemaining(v -> {
+        while (hasNext())
+        {
+            Value v = next();
             if (v != Value.EOL)
             {
-                result.add(v);
+                result = NumericList.append(result, v);
             }
-        });
+        }
         fatality();
         return result;
     }
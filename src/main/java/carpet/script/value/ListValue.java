@@ -61,17 +61,29 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
     @Override
     public Value deepcopy()
     {
-        List<Value> copyItems = new ArrayList<>(items.size());
-        for (Value entry : items)
+        if (items instanceof NumericList nl && nl.isPacked())
         {
-            copyItems.add(entry.deepcopy());
+            return new ListValue(nl.copy());
+        }
+        // lists created by scarpet are persistent already, others become persistent in their copies
+        PersistentList copyItems = items instanceof PersistentList pl ? pl.fork() : new PersistentList(items);
+        if (copyItems.hasContainers())
+        {
+            for (int i = 0, size = copyItems.size(); i < size; i++)
+            {
+                Value entry = copyItems.get(i);
+                if (entry instanceof ContainerValueInterface)
+                {
+                    copyItems.set(i, entry.deepcopy());
+                }
+            }
         }
         return new ListValue(copyItems);
     }
 
     public ListValue(Collection<? extends Value> list)
     {
-        items = new ArrayList<>(list);
+        items = list instanceof NumericList nl ? nl.copy() : list instanceof PersistentList pl ? pl.fork() : new PersistentList(list);
     }
 
     protected ListValue(List<Value> list)
@@ -107,12 +119,12 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
 
     public static ListValue ofNums(Number... list)
     {
-        List<Value> valList = new ArrayList<>();
-        for (Number i : list)
+        double[] values = new double[list.length];
+        for (int i = 0; i < list.length; i++)
         {
-            valList.add(new NumericValue(i.doubleValue()));
+            values[i] = list[i].doubleValue();
         }
-        return new ListValue(valList);
+        return new ListValue(NumericList.ofDoubles(values));
     }
 
     public static LazyValue lazyEmpty()
@@ -123,12 +135,17 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
 
     private ListValue()
     {
-        items = new ArrayList<>();
+        items = new PersistentList();
     }
 
     @Override
     public Value add(Value other)
     {
+        ListValue packed = packedArithmetic(other, '+');
+        if (packed != null)
+        {
+            return packed;
+        }
         ListValue output = new ListValue();
         if (other instanceof ListValue list)
         {
@@ -155,6 +172,16 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
         return output;
     }
 
+    private ListValue packedArithmetic(Value other, char op)
+    {
+        if (items instanceof NumericList nl && other instanceof NumericValue nv)
+        {
+            NumericList result = nl.combine(nv, op);
+            return result == null ? null : new ListValue(result);
+        }
+        return null;
+    }
+
     @Override
     public void append(Value v)
     {
@@ -164,6 +191,11 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
     @Override
     public Value subtract(Value other)
     {
+        ListValue packed = packedArithmetic(other, '-');
+        if (packed != null)
+        {
+            return packed;
+        }
         ListValue output = new ListValue();
         if (other instanceof ListValue list)
         {
@@ -199,6 +231,11 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
     @Override
     public Value multiply(Value other)
     {
+        ListValue packed = packedArithmetic(other, '*');
+        if (packed != null)
+        {
+            return packed;
+        }
         ListValue output = new ListValue();
         if (other instanceof ListValue list)
         {
@@ -228,6 +265,11 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
     @Override
     public Value divide(Value other)
     {
+        ListValue packed = packedArithmetic(other, '/');
+        if (packed != null)
+        {
+            return packed;
+        }
         ListValue output = new ListValue();
         if (other instanceof ListValue list)
         {
@@ -296,13 +338,22 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
     @Override
     public Iterator<Value> iterator()
     {
-        return new ArrayList<>(items).iterator();
+        return snapshot().iterator();
     } // should be thread safe
 
     @Override
     public List<Value> unpack()
     {
-        return new ArrayList<>(items);
+        return snapshot();
+    }
+
+    private List<Value> snapshot()
+    {
+        if (items instanceof NumericList nl)
+        {
+            return nl.copy();
+        }
+        return items instanceof PersistentList pl ? pl.fork() : new ArrayList<>(items);
     }
 
     public void extend(List<Value> subList)
@@ -363,16 +414,16 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
         List<Value> items = getItems();
         int size = items.size();
         int from = normalizeIndex(fromDesc, size);
-        if (toDesc == null)
-        {
-            return new ListValue(new ArrayList<>(getItems().subList(from, size)));
-        }
-        int to = normalizeIndex(toDesc, size + 1);
+        int to = toDesc == null ? size : normalizeIndex(toDesc, size + 1);
         if (from > to)
         {
             return ListValue.of();
         }
-        return new ListValue(new ArrayList<>(getItems().subList(from, to)));
+        if (items instanceof NumericList nl)
+        {
+            return new ListValue(nl.slice(from, to));
+        }
+        return new ListValue(new ArrayList<>(items.subList(from, to)));
     }
 
     @Override
@@ -23,7 +23,7 @@ public class MapValue extends AbstractListValue implements ContainerValueInterfa
 
     private MapValue()
     {
-        map = new HashMap<>();
+        map = new PersistentMap();
     }
 
     public MapValue(List<Value> kvPairs)
@@ -86,8 +86,22 @@ public class MapValue extends AbstractListValue implements ContainerValueInterfa
     @Override
     public Value deepcopy()
     {
-        Map<Value, Value> copyMap = new HashMap<>();
-        map.forEach((key, value) -> copyMap.put(key.deepcopy(), value.deepcopy()));
+        // maps created by scarpet are persistent already, others become persistent in their copies
+        PersistentMap copyMap = map instanceof PersistentMap pm ? pm.fork() : new PersistentMap(map);
+        if (copyMap.hasContainers())
+        {
+            map.forEach((key, value) -> {
+                if (key instanceof ContainerValueInterface)
+                {
+                    copyMap.remove(key);
+                    copyMap.put(key.deepcopy(), value.deepcopy());
+                }
+                else if (value instanceof ContainerValueInterface)
+                {
+                    copyMap.put(key, value.deepcopy());
+                }
+            });
+        }
         return new MapValue(copyMap);
     }
 
@@ -0,0 +1,401 @@
+package carpet.script.value;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * List storage for {@link ListValue} that keeps plain numbers in a primitive {@code long[]} or {@code double[]}
+ * and creates {@link NumericValue}s only when elements are read. The first element decides the representation,
+ * and the list falls back to regular boxed storage for good once anything that doesn't fit is put in it,
+ * so it can be handed out as {@link ListValue#getItems()} like any other list.
+ */
+public final class NumericList extends AbstractList<Value> implements RandomAccess
+{
+    private static final long[] NO_LONGS = new long[0];
+    private static final double[] NO_DOUBLES = new double[0];
+
+    // exactly one of these is in use at a time
+    private long[] longs;
+    private double[] doubles;
+    private List<Value> values;
+    private int size;
+
+    public NumericList()
+    {
+        this(10);
+    }
+
+    public NumericList(int capacity)
+    {
+        this.longs = capacity == 0 ? NO_LONGS : new long[capacity];
+    }
+
+    private NumericList(long[] longs, double[] doubles, List<Value> values, int size)
+    {
+        this.longs = longs;
+        this.doubles = doubles;
+        this.values = values;
+        this.size = size;
+    }
+
+    public static NumericList ofDoubles(double[] source)
+    {
+        return new NumericList(null, source.clone(), null, source.length);
+    }
+
+    /**
+     * Adds an element to a list being built, which starts as an empty {@link ArrayList}. A number as the first element
+     * switches it to a NumericList, anything else leaves it as it is, so lists of other values don't get unpacked.
+     * Returns the list to keep adding to
+     */
+    public static List<Value> append(List<Value> list, Value v)
+    {
+        if (list.isEmpty() && !(list instanceof NumericList) && v.getClass() == NumericValue.class)
+        {
+            list = new NumericList();
+        }
+        list.add(v);
+        return list;
+    }
+
+    /**
+     * Whether numbers are still stored as primitives
+     */
+    public boolean isPacked()
+    {
+        return values == null;
+    }
+
+    private static boolean isLong(Value v)
+    {
+        return v.getClass() == NumericValue.class && ((NumericValue) v).isExactLong();
+    }
+
+    private static boolean isDouble(Value v)
+    {
+        return v.getClass() == NumericValue.class && !((NumericValue) v).isExactLong();
+    }
+
+    private boolean fits(Value v)
+    {
+        if (size == 0 && values == null)
+        {
+            // empty list can still pick whichever layout matches the first element
+            if (isLong(v))
+            {
+                if (longs == null)
+                {
+                    longs = new long[doubles.length];
+                    doubles = null;
+                }
+                return true;
+            }
+            if (isDouble(v))
+            {
+                if (doubles == null)
+                {
+                    doubles = new double[longs.length];
+                    longs = null;
+                }
+                return true;
+            }
+            return false;
+        }
+        if (longs != null)
+        {
+            return isLong(v);
+        }
+        if (doubles != null)
+        {
+            return isDouble(v);
+        }
+        return false;
+    }
+
+    private void unpack()
+    {
+        List<Value> boxed = new ArrayList<>(Math.max(10, size + size / 2));
+        for (int i = 0; i < size; i++)
+        {
+            boxed.add(get(i));
+        }
+        values = boxed;
+        longs = null;
+        doubles = null;
+    }
+
+    private void ensureCapacity(int required)
+    {
+        if (longs != null && required > longs.length)
+        {
+            longs = Arrays.copyOf(longs, Math.max(required, longs.length + (longs.length >> 1) + 1));
+        }
+        else if (doubles != null && required > doubles.length)
+        {
+            doubles = Arrays.copyOf(doubles, Math.max(required, doubles.length + (doubles.length >> 1) + 1));
+        }
+    }
+
+    private void store(int index, Value v)
+    {
+        if (longs != null)
+        {
+            longs[index] = ((NumericValue) v).getLong();
+        }
+        else
+        {
+            doubles[index] = ((NumericValue) v).getDouble();
+        }
+    }
+
+    @Override
+    public Value get(int index)
+    {
+        if (values != null)
+        {
+            return values.get(index);
+        }
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return longs != null ? NumericValue.of(longs[index]) : new NumericValue(doubles[index]);
+    }
+
+    @Override
+    public int size()
+    {
+        return values != null ? values.size() : size;
+    }
+
+    @Override
+    public Value set(int index, Value element)
+    {
+        if (values == null && !fits(element))
+        {
+            unpack();
+        }
+        if (values != null)
+        {
+            return values.set(index, element);
+        }
+        Value previous = get(index);
+        store(index, element);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Value element)
+    {
+        if (values == null && !fits(element))
+        {
+            unpack();
+        }
+        if (values != null)
+        {
+            values.add(index, element);
+            modCount++;
+            return;
+        }
+        if (index < 0 || index > size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        ensureCapacity(size + 1);
+        if (index < size)
+        {
+            if (longs != null)
+            {
+                System.arraycopy(longs, index, longs, index + 1, size - index);
+            }
+            else
+            {
+                System.arraycopy(doubles, index, doubles, index + 1, size - index);
+            }
+        }
+        store(index, element);
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Value remove(int index)
+    {
+        if (values != null)
+        {
+            modCount++;
+            return values.remove(index);
+        }
+        Value previous = get(index);
+        removeRange(index, index + 1);
+        return previous;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex)
+    {
+        if (values != null)
+        {
+            values.subList(fromIndex, toIndex).clear();
+        }
+        else
+        {
+            if (longs != null)
+            {
+                System.arraycopy(longs, toIndex, longs, fromIndex, size - toIndex);
+            }
+            else
+            {
+                System.arraycopy(doubles, toIndex, doubles, fromIndex, size - toIndex);
+            }
+            size -= toIndex - fromIndex;
+        }
+        modCount++;
+    }
+
+    @Override
+    public void clear()
+    {
+        if (values != null)
+        {
+            values = null;
+            longs = new long[10];
+        }
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Copy of the list keeping the current representation
+     */
+    public NumericList copy()
+    {
+        return slice(0, size());
+    }
+
+    /**
+     * Copy of a range of the list, equivalent to {@code new ArrayList<>(subList(from, to))}
+     */
+    public NumericList slice(int from, int to)
+    {
+        if (values != null)
+        {
+            return new NumericList(null, null, new ArrayList<>(values.subList(from, to)), 0);
+        }
+        if (from < 0 || to > size || from > to)
+        {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of bounds for length " + size);
+        }
+        return longs != null
+                ? new NumericList(Arrays.copyOfRange(longs, from, to), null, null, to - from)
+                : new NumericList(null, Arrays.copyOfRange(doubles, from, to), null, to - from);
+    }
+
+    /**
+     * Sorts in natural order, matching {@link NumericValue#compareTo} for numbers,
+     * directly on the primitive array if the list is packed
+     */
+    public void sortNatural()
+    {
+        if (values != null)
+        {
+            values.sort(null);
+        }
+        else if (longs != null)
+        {
+            Arrays.sort(longs, 0, size);
+        }
+        else
+        {
+            Arrays.sort(doubles, 0, size);
+        }
+        modCount++;
+    }
+
+    /**
+     * Largest (or smallest, with a negative {@code sign}) element, first one wins on ties,
+     * scanned without materializing values when packed
+     */
+    public Value extreme(int sign)
+    {
+        if (values != null || size == 0)
+        {
+            Value best = null;
+            for (Value v : this)
+            {
+                if (best == null || Integer.signum(v.compareTo(best)) == sign)
+                {
+                    best = v;
+                }
+            }
+            return best;
+        }
+        int best = 0;
+        for (int i = 1; i < size; i++)
+        {
+            int cmp = longs != null ? Long.compare(longs[i], longs[best]) : Double.compare(doubles[i], doubles[best]);
+            if (Integer.signum(cmp) == sign)
+            {
+                best = i;
+            }
+        }
+        return get(best);
+    }
+
+    /**
+     * Element-wise arithmetic with a number that keeps the result packed, or null if that is not possible
+     * and the caller should go through {@link Value} operations.
+     */
+    NumericList combine(NumericValue other, char op)
+    {
+        if (values != null || other.getClass() != NumericValue.class)
+        {
+            return null;
+        }
+        if (longs != null && other.isExactLong() && op != '/')
+        {
+            long operand = other.getLong();
+            long[] result = new long[size];
+            for (int i = 0; i < size; i++)
+            {
+                long v = longs[i];
+                result[i] = switch (op)
+                {
+                    case '+' -> v + operand;
+                    case '-' -> v - operand;
+                    default -> v * operand;
+                };
+            }
+            return new NumericList(result, null, null, size);
+        }
+        if (longs != null && op != '/')
+        {
+            // long and double is a double, but so are all the results, so this can stay packed
+            double operand = other.getDouble();
+            double[] result = new double[size];
+            for (int i = 0; i < size; i++)
+            {
+                double v = longs[i];
+                result[i] = op == '+' ? v + operand : op == '-' ? v - operand : v * operand;
+            }
+            return new NumericList(null, result, null, size);
+        }
+        double operand = other.getDouble();
+        double[] result = new double[size];
+        for (int i = 0; i < size; i++)
+        {
+            double v = longs != null ? longs[i] : doubles[i];
+            result[i] = switch (op)
+            {
+                case '+' -> v + operand;
+                case '-' -> v - operand;
+                case '*' -> v * operand;
+                default -> v / operand;
+            };
+        }
+        return new NumericList(null, result, null, size);
+    }
+}
@@ -0,0 +1,336 @@
+package carpet.script.value;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Bit-partitioned vector trie used as the storage of lists created by {@link ListValue} and of their deep copies.
+ * Like {@link PersistentMap}, a list edits the nodes it created in place, and {@link #fork()} is O(1): it hands out
+ * a new list over the same nodes and makes both sides copy only the paths they modify from then on, so reads,
+ * replacing elements and adding or removing at the end are O(log n). Inserting or removing in the middle rebuilds
+ * the list once, in O(n), same as an array list would shift it.
+ */
+public final class PersistentList extends AbstractList<Value> implements RandomAccess
+{
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final class Node
+    {
+        final Object owner;
+        final Object[] array;
+
+        Node(Object owner, Object[] array)
+        {
+            this.owner = owner;
+            this.array = array;
+        }
+    }
+
+    private static final Node EMPTY = new Node(null, new Object[WIDTH]);
+
+    // nodes created with this token belong to this list only and are edited in place, forking replaces it
+    private Object owner = new Object();
+    private int size;
+    private int shift = BITS;
+    private Node root = EMPTY;
+    // last, partially filled leaf, kept outside of the tree so appending is cheap
+    private Node tail = EMPTY;
+    // number of elements that are containers themselves, and need their own copies in deepcopy
+    private int containers;
+
+    public PersistentList()
+    {
+    }
+
+    public PersistentList(Collection<? extends Value> source)
+    {
+        for (Value v : source)
+        {
+            add(v);
+        }
+    }
+
+    private PersistentList(int size, int shift, Node root, Node tail, int containers)
+    {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+        this.containers = containers;
+    }
+
+    /**
+     * Returns a copy sharing all the data with this list. Synchronized, since the list stops editing
+     * the shared nodes in place, so concurrent copies of the same list don't race on that
+     */
+    public synchronized PersistentList fork()
+    {
+        owner = new Object();
+        return new PersistentList(size, shift, root, tail, containers);
+    }
+
+    /**
+     * Whether any of the elements are containers that need to be copied separately
+     */
+    public boolean hasContainers()
+    {
+        return containers > 0;
+    }
+
+    private Node editable(Node node)
+    {
+        return node.owner == owner ? node : new Node(owner, node.array.clone());
+    }
+
+    private int tailOffset()
+    {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    private Node leafFor(int index)
+    {
+        if (index >= tailOffset())
+        {
+            return tail;
+        }
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS)
+        {
+            node = (Node) node.array[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public Value get(int index)
+    {
+        checkIndex(index);
+        return (Value) leafFor(index).array[index & MASK];
+    }
+
+    @Override
+    public Value set(int index, Value element)
+    {
+        checkIndex(index);
+        Node leaf;
+        if (index >= tailOffset())
+        {
+            tail = editable(tail);
+            leaf = tail;
+        }
+        else
+        {
+            root = editable(root);
+            leaf = root;
+            for (int level = shift; level > 0; level -= BITS)
+            {
+                int sub = (index >>> level) & MASK;
+                Node child = editable((Node) leaf.array[sub]);
+                leaf.array[sub] = child;
+                leaf = child;
+            }
+        }
+        Value previous = (Value) leaf.array[index & MASK];
+        leaf.array[index & MASK] = element;
+        containers += (PersistentMap.isContainer(element) ? 1 : 0) - (PersistentMap.isContainer(previous) ? 1 : 0);
+        return previous;
+    }
+
+    @Override
+    public boolean add(Value element)
+    {
+        int inTail = size - tailOffset();
+        if (inTail < WIDTH)
+        {
+            tail = editable(tail);
+            tail.array[inTail] = element;
+        }
+        else
+        {
+            Node fullTail = tail;
+            if ((size >>> BITS) > (1 << shift))
+            {
+                Node newRoot = new Node(owner, new Object[WIDTH]);
+                newRoot.array[0] = root;
+                newRoot.array[1] = newPath(shift, fullTail);
+                root = newRoot;
+                shift += BITS;
+            }
+            else
+            {
+                root = pushTail(shift, root, fullTail);
+            }
+            tail = new Node(owner, new Object[WIDTH]);
+            tail.array[0] = element;
+        }
+        size++;
+        containers += PersistentMap.isContainer(element) ? 1 : 0;
+        modCount++;
+        return true;
+    }
+
+    private Node pushTail(int level, Node parent, Node fullTail)
+    {
+        int sub = ((size - 1) >>> level) & MASK;
+        Node result = editable(parent);
+        Node child = (Node) parent.array[sub];
+        result.array[sub] = level == BITS ? fullTail : child != null ? pushTail(level - BITS, child, fullTail) : newPath(level - BITS, fullTail);
+        return result;
+    }
+
+    private Node newPath(int level, Node node)
+    {
+        if (level == 0)
+        {
+            return node;
+        }
+        Node result = new Node(owner, new Object[WIDTH]);
+        result.array[0] = newPath(level - BITS, node);
+        return result;
+    }
+
+    private Value removeLast()
+    {
+        Value last = get(size - 1);
+        int inTail = size - tailOffset();
+        if (size == 1)
+        {
+            root = EMPTY;
+            tail = EMPTY;
+            shift = BITS;
+        }
+        else if (inTail > 1)
+        {
+            tail = editable(tail);
+            tail.array[inTail - 1] = null;
+        }
+        else
+        {
+            Node newTail = leafFor(size - 2);
+            Node newRoot = popTail(shift, root);
+            if (newRoot == null)
+            {
+                newRoot = EMPTY;
+            }
+            if (shift > BITS && newRoot.array[1] == null)
+            {
+                newRoot = (Node) newRoot.array[0];
+                shift -= BITS;
+            }
+            root = newRoot;
+            tail = newTail;
+        }
+        size--;
+        containers -= PersistentMap.isContainer(last) ? 1 : 0;
+        return last;
+    }
+
+    private Node popTail(int level, Node node)
+    {
+        int sub = ((size - 2) >>> level) & MASK;
+        if (level > BITS)
+        {
+            Node child = popTail(level - BITS, (Node) node.array[sub]);
+            if (child == null && sub == 0)
+            {
+                return null;
+            }
+            Node result = editable(node);
+            result.array[sub] = child;
+            return result;
+        }
+        if (sub == 0)
+        {
+            return null;
+        }
+        Node result = editable(node);
+        result.array[sub] = null;
+        return result;
+    }
+
+    @Override
+    public void add(int index, Value element)
+    {
+        if (index < 0 || index > size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        if (index == size)
+        {
+            add(element);
+            return;
+        }
+        Value[] elements = toArray(size + 1);
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = element;
+        rebuild(elements);
+    }
+
+    @Override
+    public Value remove(int index)
+    {
+        checkIndex(index);
+        if (index == size - 1)
+        {
+            modCount++;
+            return removeLast();
+        }
+        Value[] elements = toArray(size);
+        Value removed = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        rebuild(Arrays.copyOf(elements, size - 1));
+        return removed;
+    }
+
+    private Value[] toArray(int length)
+    {
+        Value[] elements = new Value[length];
+        for (int i = 0; i < size; i += WIDTH)
+        {
+            System.arraycopy(leafFor(i).array, 0, elements, i, Math.min(WIDTH, size - i));
+        }
+        return elements;
+    }
+
+    /**
+     * Replaces the contents with the elements in fresh nodes, for changes that would otherwise shift every element
+     * after them one by one
+     */
+    private void rebuild(Value[] elements)
+    {
+        clear();
+        for (Value v : elements)
+        {
+            add(v);
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        size = 0;
+        shift = BITS;
+        root = EMPTY;
+        tail = EMPTY;
+        containers = 0;
+        modCount++;
+    }
+}
@@ -0,0 +1,472 @@
+package carpet.script.value;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Hash array mapped trie used as the storage of maps created by {@link MapValue} and of their deep copies.
+ * A map edits the nodes it created in place. Copies made with {@link #fork()} share all the structure and cost O(1),
+ * after which each side copies only the O(log n) path it modifies. Iteration order follows the key hashes.
+ */
+public final class PersistentMap extends AbstractMap<Value, Value>
+{
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    // last level with hash bits to consume, deeper than that all keys have the same hash
+    private static final int MAX_SHIFT = 30;
+
+    private static final class Node
+    {
+        final Object owner;
+        // on regular levels bit positions of slots, on collision level the number of pairs
+        int bitmap;
+        // key, value pairs, or null, child node pairs
+        Object[] array;
+
+        Node(Object owner, int bitmap, Object[] array)
+        {
+            this.owner = owner;
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+    }
+
+    private static final Node EMPTY = new Node(null, 0, new Object[0]);
+    private static final Object MISSING = new Object();
+
+    // nodes created with this token belong to this map only and are edited in place, forking replaces it
+    private Object owner = new Object();
+    private Node root;
+    private int size;
+    // number of keys and values that are containers themselves, and need their own copies in deepcopy
+    private int containers;
+    // set by put and remove
+    private Value previous;
+    private boolean found;
+
+    public PersistentMap()
+    {
+        this.root = EMPTY;
+    }
+
+    public PersistentMap(Map<Value, Value> source)
+    {
+        this();
+        source.forEach(this::put);
+    }
+
+    private PersistentMap(Node root, int size, int containers)
+    {
+        this.root = root;
+        this.size = size;
+        this.containers = containers;
+    }
+
+    /**
+     * Returns a copy sharing all the data with this map. Synchronized, since the map stops editing
+     * the shared nodes in place, so concurrent copies of the same map don't race on that
+     */
+    public synchronized PersistentMap fork()
+    {
+        owner = new Object();
+        return new PersistentMap(root, size, containers);
+    }
+
+    /**
+     * Whether any of the keys or values are containers that need to be copied separately
+     */
+    public boolean hasContainers()
+    {
+        return containers > 0;
+    }
+
+    static boolean isContainer(Value v)
+    {
+        return v instanceof ContainerValueInterface;
+    }
+
+    private static int hash(Object key)
+    {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private Node editable(Node node)
+    {
+        return node.owner == owner ? node : new Node(owner, node.bitmap, node.array.clone());
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return key instanceof Value && find(key) != MISSING;
+    }
+
+    @Override
+    public Value get(Object key)
+    {
+        if (!(key instanceof Value))
+        {
+            return null;
+        }
+        Object value = find(key);
+        return value == MISSING ? null : (Value) value;
+    }
+
+    private Object find(Object key)
+    {
+        int hash = hash(key);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS)
+        {
+            if (shift > MAX_SHIFT)
+            {
+                for (int i = 0; i < 2 * node.bitmap; i += 2)
+                {
+                    if (key.equals(node.array[i]))
+                    {
+                        return node.array[i + 1];
+                    }
+                }
+                return MISSING;
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0)
+            {
+                return MISSING;
+            }
+            int idx = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+            Object k = node.array[idx];
+            if (k == null)
+            {
+                node = (Node) node.array[idx + 1];
+                continue;
+            }
+            return key.equals(k) ? node.array[idx + 1] : MISSING;
+        }
+    }
+
+    @Override
+    public Value put(Value key, Value value)
+    {
+        found = false;
+        previous = null;
+        root = put(root, 0, hash(key), key, value);
+        if (found)
+        {
+            containers += (isContainer(value) ? 1 : 0) - (isContainer(previous) ? 1 : 0);
+        }
+        else
+        {
+            size++;
+            containers += (isContainer(key) ? 1 : 0) + (isContainer(value) ? 1 : 0);
+        }
+        Value result = previous;
+        previous = null;
+        return result;
+    }
+
+    private Node put(Node node, int shift, int hash, Value key, Value value)
+    {
+        if (shift > MAX_SHIFT)
+        {
+            int count = node.bitmap;
+            for (int i = 0; i < 2 * count; i += 2)
+            {
+                if (key.equals(node.array[i]))
+                {
+                    found = true;
+                    previous = (Value) node.array[i + 1];
+                    Node edited = editable(node);
+                    edited.array[i + 1] = value;
+                    return edited;
+                }
+            }
+            Object[] grown = new Object[2 * count + 2];
+            System.arraycopy(node.array, 0, grown, 0, 2 * count);
+            grown[2 * count] = key;
+            grown[2 * count + 1] = value;
+            return withArray(node, count + 1, grown);
+        }
+        int bit = 1 << ((hash >>> shift) & MASK);
+        int idx = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0)
+        {
+            Object[] grown = new Object[node.array.length + 2];
+            System.arraycopy(node.array, 0, grown, 0, idx);
+            grown[idx] = key;
+            grown[idx + 1] = value;
+            System.arraycopy(node.array, idx, grown, idx + 2, node.array.length - idx);
+            return withArray(node, node.bitmap | bit, grown);
+        }
+        Object k = node.array[idx];
+        Object v = node.array[idx + 1];
+        if (k == null)
+        {
+            Node child = put((Node) v, shift + BITS, hash, key, value);
+            if (child == v)
+            {
+                return node;
+            }
+            Node edited = editable(node);
+            edited.array[idx + 1] = child;
+            return edited;
+        }
+        if (key.equals(k))
+        {
+            found = true;
+            previous = (Value) v;
+            if (v == value)
+            {
+                return node;
+            }
+            Node edited = editable(node);
+            edited.array[idx + 1] = value;
+            return edited;
+        }
+        Node edited = editable(node);
+        edited.array[idx] = null;
+        edited.array[idx + 1] = split(shift + BITS, (Value) k, (Value) v, hash(k), key, value, hash);
+        return edited;
+    }
+
+    private Node withArray(Node node, int bitmap, Object[] array)
+    {
+        if (node.owner == owner)
+        {
+            node.bitmap = bitmap;
+            node.array = array;
+            return node;
+        }
+        return new Node(owner, bitmap, array);
+    }
+
+    private Node split(int shift, Value k1, Value v1, int h1, Value k2, Value v2, int h2)
+    {
+        if (shift > MAX_SHIFT)
+        {
+            return new Node(owner, 2, new Object[]{k1, v1, k2, v2});
+        }
+        int b1 = (h1 >>> shift) & MASK;
+        int b2 = (h2 >>> shift) & MASK;
+        if (b1 == b2)
+        {
+            return new Node(owner, 1 << b1, new Object[]{null, split(shift + BITS, k1, v1, h1, k2, v2, h2)});
+        }
+        return b1 < b2
+                ? new Node(owner, (1 << b1) | (1 << b2), new Object[]{k1, v1, k2, v2})
+                : new Node(owner, (1 << b1) | (1 << b2), new Object[]{k2, v2, k1, v1});
+    }
+
+    @Override
+    public Value remove(Object key)
+    {
+        if (!(key instanceof Value))
+        {
+            return null;
+        }
+        found = false;
+        previous = null;
+        Node newRoot = remove(root, 0, hash(key), key);
+        root = newRoot == null ? EMPTY : newRoot;
+        Value result = previous;
+        previous = null;
+        return result;
+    }
+
+    private Node remove(Node node, int shift, int hash, Object key)
+    {
+        if (shift > MAX_SHIFT)
+        {
+            int count = node.bitmap;
+            for (int i = 0; i < 2 * count; i += 2)
+            {
+                if (key.equals(node.array[i]))
+                {
+                    removed((Value) node.array[i], (Value) node.array[i + 1]);
+                    if (count == 1)
+                    {
+                        return null;
+                    }
+                    return withArray(node, count - 1, without(node.array, i));
+                }
+            }
+            return node;
+        }
+        int bit = 1 << ((hash >>> shift) & MASK);
+        if ((node.bitmap & bit) == 0)
+        {
+            return node;
+        }
+        int idx = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+        Object k = node.array[idx];
+        Object v = node.array[idx + 1];
+        if (k == null)
+        {
+            Node child = remove((Node) v, shift + BITS, hash, key);
+            if (child == v)
+            {
+                return node;
+            }
+            if (child != null)
+            {
+                Node edited = editable(node);
+                edited.array[idx + 1] = child;
+                return edited;
+            }
+        }
+        else if (key.equals(k))
+        {
+            removed((Value) k, (Value) v);
+        }
+        else
+        {
+            return node;
+        }
+        if (node.bitmap == bit)
+        {
+            return null;
+        }
+        return withArray(node, node.bitmap ^ bit, without(node.array, idx));
+    }
+
+    private void removed(Value key, Value value)
+    {
+        found = true;
+        previous = value;
+        size--;
+        containers -= (isContainer(key) ? 1 : 0) + (isContainer(value) ? 1 : 0);
+    }
+
+    private static Object[] without(Object[] array, int idx)
+    {
+        Object[] shrunk = new Object[array.length - 2];
+        System.arraycopy(array, 0, shrunk, 0, idx);
+        System.arraycopy(array, idx + 2, shrunk, idx, array.length - idx - 2);
+        return shrunk;
+    }
+
+    @Override
+    public void clear()
+    {
+        root = EMPTY;
+        size = 0;
+        containers = 0;
+    }
+
+    @Override
+    public Set<Entry<Value, Value>> entrySet()
+    {
+        return new AbstractSet<>()
+        {
+            @Override
+            public Iterator<Entry<Value, Value>> iterator()
+            {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Walks the trie in place, so like with other maps, the map shouldn't be modified meanwhile other than through
+     * the iterator. Removing gives up the nodes first, so it goes to fresh copies of them and doesn't disturb the walk.
+     */
+    private final class EntryIterator implements Iterator<Entry<Value, Value>>
+    {
+        private final Node[] nodes = new Node[MAX_SHIFT / BITS + 2];
+        private final int[] positions = new int[MAX_SHIFT / BITS + 2];
+        private int depth = 0;
+        private Value nextKey;
+        private Value nextValue;
+        private Value lastKey;
+
+        EntryIterator()
+        {
+            nodes[0] = root;
+            advance();
+        }
+
+        private void advance()
+        {
+            nextKey = null;
+            while (depth >= 0)
+            {
+                Node node = nodes[depth];
+                int pos = positions[depth];
+                if (pos >= node.array.length || (depth > MAX_SHIFT / BITS && pos >= 2 * node.bitmap))
+                {
+                    depth--;
+                    continue;
+                }
+                positions[depth] = pos + 2;
+                Object k = node.array[pos];
+                if (k == null)
+                {
+                    depth++;
+                    nodes[depth] = (Node) node.array[pos + 1];
+                    positions[depth] = 0;
+                    continue;
+                }
+                nextKey = (Value) k;
+                nextValue = (Value) node.array[pos + 1];
+                return;
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return nextKey != null;
+        }
+
+        @Override
+        public Entry<Value, Value> next()
+        {
+            if (nextKey == null)
+            {
+                throw new NoSuchElementException();
+            }
+            Value key = nextKey;
+            Value value = nextValue;
+            lastKey = key;
+            advance();
+            return new SimpleEntry<>(key, value)
+            {
+                @Override
+                public Value setValue(Value newValue)
+                {
+                    super.setValue(newValue);
+                    return PersistentMap.this.put(key, newValue);
+                }
+            };
+        }
+
+        @Override
+        public void remove()
+        {
+            if (lastKey == null)
+            {
+                throw new IllegalStateException();
+            }
+            owner = new Object();
+            PersistentMap.this.remove(lastKey);
+            lastKey = null;
+        }
+    }
+}
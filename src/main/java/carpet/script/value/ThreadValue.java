@@ -7,14 +7,15 @@ import carpet.script.exception.ExitStatement;
 import carpet.script.exception.ExpressionException;
 import carpet.script.exception.InternalExpressionException;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import net.minecraft.core.RegistryAccess;
 import net.minecraft.nbt.Tag;
@@ -24,8 +25,15 @@ public class ThreadValue extends LazyListValue
     private final CompletableFuture<Value> taskFuture;
     private final long id;
     private static long sequence = 0L;
-    private final Deque<Value> coState = new ArrayDeque<>();
+    // values yielded by the task, waiting for task_await
+    private final Queue<Value> coState = new ConcurrentLinkedQueue<>();
+    // value from task_send for a task waiting in a locking yield, EOL when there is none
     private final AtomicReference<Value> coLock = new AtomicReference<>(Value.EOL);
+    // threads parked waiting on the other side of the exchange, they register before checking the state
+    // for the last time, and the other side wakes all of them up after changing it, so no wakeup is missed,
+    // even with several threads waiting on the same task
+    private final Queue<Thread> awaiting = new ConcurrentLinkedQueue<>();
+    private final Queue<Thread> yielding = new ConcurrentLinkedQueue<>();
     public final boolean isCoroutine;
 
     public ThreadValue(Value pool, FunctionValue function, Expression expr, Tokenizer.Token token, Context ctx, List<Value> args)
@@ -33,10 +41,26 @@ public class ThreadValue extends LazyListValue
         this.id = sequence++;
         this.isCoroutine = ctx.host.canSynchronouslyExecute();
         this.taskFuture = getCompletableFutureFromFunction(pool, function, expr, token, ctx, args);
+        if (isCoroutine)
+        {
+            // task_await can't get any more values once the task is done
+            taskFuture.whenComplete((v, e) -> wakeUp(awaiting));
+        }
 
         Thread.yield();
     }
 
+    /**
+     * Coroutine over a task driven by the caller, so the handoff can be measured without an app, see ThreadValueBenchmark
+     */
+    ThreadValue(CompletableFuture<Value> taskFuture)
+    {
+        this.id = sequence++;
+        this.isCoroutine = true;
+        this.taskFuture = taskFuture;
+        taskFuture.whenComplete((v, e) -> wakeUp(awaiting));
+    }
+
     public CompletableFuture<Value> getCompletableFutureFromFunction(Value pool, FunctionValue function, Expression expr, Tokenizer.Token token, Context ctx, List<Value> args)
     {
         ExecutorService executor = ctx.host.getExecutor(pool);
@@ -177,109 +201,105 @@ public class ThreadValue extends LazyListValue
     @Override
     public Value next()
     {
-        Value popped = null;
-        synchronized (coState)
+        boolean interrupted = false;
+        try
         {
             while (true)
             {
-                if (!coState.isEmpty())
-                {
-                    popped = coState.pop();
-                }
-                else if (taskFuture.isDone())
+                Value popped = coState.poll();
+                if (popped == null && taskFuture.isDone())
                 {
-                    popped = Value.EOL;
+                    // task could have yielded right before finishing
+                    popped = coState.poll();
+                    if (popped == null)
+                    {
+                        return Value.EOL;
+                    }
                 }
                 if (popped != null)
                 {
-                    break;
-                }
-                try
-                {
-                    coState.wait(1);
+                    // a locking yield might be waiting for the queue to clear
+                    wakeUp(yielding);
+                    return popped;
                 }
-                catch (InterruptedException ignored)
+                Thread current = Thread.currentThread();
+                awaiting.add(current);
+                if (coState.isEmpty() && !taskFuture.isDone())
                 {
+                    LockSupport.park(this);
                 }
+                awaiting.remove(current);
+                interrupted |= Thread.interrupted();
+            }
+        }
+        finally
+        {
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
             }
-            coState.notifyAll();
         }
-        return popped;
     }
 
     public void send(Value value)
     {
-        synchronized (coLock)
-        {
-            coLock.set(value);
-            coLock.notifyAll();
-        }
+        coLock.set(value);
+        wakeUp(yielding);
+    }
+
+    private static void wakeUp(Queue<Thread> waiters)
+    {
+        waiters.forEach(LockSupport::unpark);
     }
 
     public Value ping(Value value, boolean lock)
     {
-        synchronized (coState)
+        if (!lock)
+        {
+            coState.add(value);
+            wakeUp(awaiting);
+            return Value.NULL;
+        }
+        Thread current = Thread.currentThread();
+        boolean interrupted = false;
+        try
         {
-            try
+            // locked mode, waiting for the previous values to be picked up
+            while (!coState.isEmpty())
             {
-                if (!lock)
-                {
-                    coState.add(value);
-                    return Value.NULL;
-                }
-                while (true)
+                yielding.add(current);
+                if (!coState.isEmpty())
                 {
-                    if (coState.isEmpty())
-                    {
-                        coState.add(value);
-                        break;
-                    }
-                    try
-                    {
-                        coState.wait(1);
-                    }
-
-                    catch (InterruptedException ignored)
-                    {
-                    }
+                    LockSupport.park(this);
                 }
+                yielding.remove(current);
+                interrupted |= Thread.interrupted();
             }
-            finally
-            {
-                coState.notifyAll();
-            }
-        }
-
-        // locked mode
-
-        synchronized (coLock)
-        {
-            Value ret;
-            try
+            coState.add(value);
+            wakeUp(awaiting);
+            // and for the response
+            while (true)
             {
-                while (true)
+                Value ret = coLock.getAndSet(Value.EOL);
+                if (ret != Value.EOL)
                 {
-                    Value current = coLock.get();
-                    if (current != Value.EOL)
-                    {
-                        ret = current;
-                        coLock.set(Value.EOL);
-                        break;
-                    }
-                    try
-                    {
-                        coLock.wait(1);
-                    }
-                    catch (InterruptedException ignored)
-                    {
-                    }
+                    return ret;
                 }
+                yielding.add(current);
+                if (coLock.get() == Value.EOL)
+                {
+                    LockSupport.park(this);
+                }
+                yielding.remove(current);
+                interrupted |= Thread.interrupted();
             }
-            finally
+        }
+        finally
+        {
+            if (interrupted)
             {
-                coLock.notifyAll();
+                Thread.currentThread().interrupt();
             }
-            return ret;
         }
     }
 }
@@ -1,7 +1,15 @@
 package carpet.utils;
 
+import carpet.script.utils.ShapeDispatcher;
+import carpet.script.value.ListValue;
+import carpet.script.value.NumericValue;
+import carpet.script.value.StringValue;
+import carpet.script.value.Value;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2LongMap;
 import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import jdk.jfr.Event;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.core.RegistryAccess;
 import net.minecraft.core.registries.BuiltInRegistries;
@@ -9,14 +17,20 @@ import net.minecraft.core.registries.Registries;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.entity.BlockEntityType;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static java.util.Map.entry;
@@ -26,13 +40,26 @@ public class CarpetProfiler
     private static final Object2LongOpenHashMap<String> SECTION_STATS = new Object2LongOpenHashMap<>();
     private static final Object2LongOpenHashMap<Pair<Level,Object>> ENTITY_TIMES = new Object2LongOpenHashMap<>();
     private static final Object2LongOpenHashMap<Pair<Level,Object>> ENTITY_COUNT = new Object2LongOpenHashMap<>();
-
+    // times of the current tick, added to the histograms of per tick times once it ends
+    private static final Object2LongOpenHashMap<String> TICK_SECTION_TIMES = new Object2LongOpenHashMap<>();
+    private static final Object2LongOpenHashMap<Pair<Level,Object>> TICK_ENTITY_TIMES = new Object2LongOpenHashMap<>();
+    private static final Map<String, LatencyHistogram> SECTION_HISTOGRAMS = new HashMap<>();
+    private static final Map<Pair<Level,Object>, LatencyHistogram> ENTITY_HISTOGRAMS = new HashMap<>();
+    private static long worst_tick_time = 0L;
+    private static int worst_tick = 0;
+    private static Map<String, Long> worst_tick_sections = Map.of();
+    private static Map<Pair<Level,Object>, Long> worst_tick_entities = Map.of();
+    // time spent in each chunk, by level and kind of tick, keyed with ChunkPos.toLong
+    private static final Map<Level, Long2LongOpenHashMap[]> CHUNK_TIMES = new LinkedHashMap<>();
+    private static boolean show_chunks = false;
 
     private static CommandSourceStack currentRequester = null;
     public static int tick_health_requested = 0;
     private static int tick_health_elapsed = 0;
     private static TYPE test_type = TYPE.NONE; //1 for ticks, 2 for entities
     private static long current_tick_start = 0;
+    // continuous recording of tick times, set by the profilerHistory rule
+    private static TickHistory history = null;
     private static final Map<String, String> GENERAL_SECTIONS = Map.of(
         "Network",     "Packet sending, player logins, disconnects, kicks, anti-cheat check for player movement, etc.",
         "Autosave",    "Autosave",
@@ -71,23 +98,91 @@ public class CarpetProfiler
         NONE,
         GENERAL,
         ENTITY,
-        TILEENTITY
+        TILEENTITY,
+        CHUNK
+    }
+
+    public enum CHUNK_TIME
+    {
+        ENTITIES("entities"),
+        BLOCK_ENTITIES("block entities"),
+        SCHEDULED_TICKS("scheduled ticks"),
+        RANDOM_TICKS("random ticks");
+
+        private final String label;
+
+        CHUNK_TIME(String label)
+        {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Sections that run for each ticked chunk, so thousands of times a tick. Their ids in the history are looked up
+     * once here, and the history gets their times without any tokens, see {@link #end_chunk_phase}
+     */
+    public enum CHUNK_PHASE
+    {
+        SPAWNING("Spawning"),
+        ENVIRONMENT("Environment"),
+        RANDOM_TICKS("Random Ticks");
+
+        private final String section;
+        private final int historyId;
+
+        CHUNK_PHASE(String section)
+        {
+            this.section = section;
+            this.historyId = TickHistory.sectionId(section);
+        }
     }
 
-    public static record ProfilerToken(TYPE type, Object section, long start, Level world)
+    /**
+     * @param historyId section number in the {@link TickHistory}, or -1 if it doesn't go there
+     */
+    public static record ProfilerToken(TYPE type, Object section, long start, Level world, Event event, int historyId)
     {
-        public ProfilerToken(TYPE type, Object section, Level world)
+        public ProfilerToken(TYPE type, Object section, Level world, Event event, int historyId)
         {
-            this(type, section, System.nanoTime(), world);
+            this(type, section, System.nanoTime(), world, event, historyId);
         }
     }
 
+    /**
+     * Keeps a rolling history of the given number of ticks, or stops recording it with 0
+     */
+    public static void setHistoryLength(int ticks)
+    {
+        if (ticks <= 0)
+        {
+            history = null;
+        }
+        else if (history == null || history.capacity() != ticks)
+        {
+            history = new TickHistory(ticks);
+        }
+    }
+
+    public static TickHistory history()
+    {
+        return history;
+    }
+
+    /**
+     * Whether ticks need to be timed, for a requested report, the history or a flight recording
+     */
+    public static boolean isActive()
+    {
+        return tick_health_requested != 0L || history != null || ProfilerEvents.recording;
+    }
+
     public static void prepare_tick_report(CommandSourceStack source, int ticks)
     {
         //maybe add so it only spams the sending player, but honestly - all may want to see it
         SECTION_STATS.clear(); // everything then defaults to 0
         ENTITY_COUNT.clear();
         ENTITY_TIMES.clear();
+        clear_histograms();
         test_type = TYPE.GENERAL;
 
         tick_health_elapsed = ticks;
@@ -102,6 +197,7 @@ public class CarpetProfiler
         SECTION_STATS.clear();
         ENTITY_COUNT.clear();
         ENTITY_TIMES.clear();
+        clear_histograms();
         test_type = TYPE.ENTITY;
         tick_health_elapsed = ticks;
         tick_health_requested = ticks;
@@ -109,32 +205,108 @@ public class CarpetProfiler
         currentRequester = source;
     }
 
+    public static void prepare_chunk_report(CommandSourceStack source, int ticks, boolean show)
+    {
+        SECTION_STATS.clear();
+        ENTITY_COUNT.clear();
+        ENTITY_TIMES.clear();
+        clear_histograms();
+        CHUNK_TIMES.clear();
+        test_type = TYPE.CHUNK;
+        show_chunks = show;
+        tick_health_elapsed = ticks;
+        tick_health_requested = ticks;
+        current_tick_start = 0L;
+        currentRequester = source;
+    }
+
+    /**
+     * Start time of something ticked in a single chunk of a server level, or 0 if chunks are not profiled right now.
+     * Goes with {@link #end_chunk_section}, without creating any tokens, since these run for every entity and block entity
+     */
+    public static long start_chunk_section(Level world)
+    {
+        if (tick_health_requested == 0L || test_type != TYPE.CHUNK || current_tick_start == 0 || world.isClientSide)
+            return 0L;
+        return System.nanoTime();
+    }
+
+    public static void end_chunk_section(Level world, long chunk, CHUNK_TIME kind, long start)
+    {
+        if (start == 0L || test_type != TYPE.CHUNK)
+            return;
+        Long2LongOpenHashMap[] times = CHUNK_TIMES.get(world);
+        if (times == null)
+        {
+            times = new Long2LongOpenHashMap[CHUNK_TIME.values().length];
+            for (int i = 0; i < times.length; i++)
+                times[i] = new Long2LongOpenHashMap();
+            CHUNK_TIMES.put(world, times);
+        }
+        times[kind.ordinal()].addTo(chunk, System.nanoTime() - start);
+    }
+
     public static ProfilerToken start_section(Level world, String name, TYPE type)
     {
-        if (tick_health_requested == 0L || test_type != TYPE.GENERAL || current_tick_start == 0)
+        boolean recording = ProfilerEvents.sectionsEnabled();
+        if (!recording && history == null && (tick_health_requested == 0L || test_type != TYPE.GENERAL || current_tick_start == 0))
+            return null;
+        int historyId = history != null && type == TYPE.GENERAL && (world == null || !world.isClientSide) ? TickHistory.sectionId(name) : -1;
+        return new ProfilerToken(type, name, world, recording ? ProfilerEvents.section() : null, historyId);
+    }
+
+    /**
+     * Token for a chunk phase, only made for tick reports and flight recordings
+     */
+    public static ProfilerToken start_chunk_phase(Level world, CHUNK_PHASE phase)
+    {
+        boolean recording = ProfilerEvents.sectionsEnabled();
+        if (!recording && (tick_health_requested == 0L || test_type != TYPE.GENERAL || current_tick_start == 0))
             return null;
-        return new ProfilerToken(type, name, world);
+        return new ProfilerToken(TYPE.GENERAL, phase.section, world, recording ? ProfilerEvents.section() : null, -1);
+    }
+
+    /**
+     * Adds the time since start to the phase in the history, skipped with no phase or a start of 0.
+     * Returns the start of the next phase, or 0 if there is no history to record it in
+     */
+    public static long end_chunk_phase(Level world, CHUNK_PHASE phase, long start)
+    {
+        if (history == null || world.isClientSide)
+            return 0L;
+        long now = System.nanoTime();
+        if (phase != null && start != 0L)
+            history.record(world, phase.historyId, now - start);
+        return now;
     }
 
     public static ProfilerToken start_entity_section(Level world, Entity e, TYPE type)
     {
-        if (tick_health_requested == 0L || test_type != TYPE.ENTITY || current_tick_start == 0)
+        boolean recording = ProfilerEvents.entityTicksEnabled();
+        if (!recording && (tick_health_requested == 0L || test_type != TYPE.ENTITY || current_tick_start == 0))
             return null;
-        return new ProfilerToken(type, e.getType(), world);
+        return new ProfilerToken(type, e.getType(), world, recording ? ProfilerEvents.entityTick(e.blockPosition()) : null, -1);
     }
 
     public static ProfilerToken start_block_entity_section(Level world, BlockEntity be, TYPE type)
     {
-        if (tick_health_requested == 0L || test_type != TYPE.ENTITY || current_tick_start == 0)
+        boolean recording = ProfilerEvents.blockEntityTicksEnabled();
+        if (!recording && (tick_health_requested == 0L || test_type != TYPE.ENTITY || current_tick_start == 0))
             return null;
-        return new ProfilerToken(type, be.getType(), world);
+        return new ProfilerToken(type, be.getType(), world, recording ? ProfilerEvents.blockEntityTick(be.getBlockPos()) : null, -1);
     }
 
     public static void end_current_section(ProfilerToken tok)
     {
-        if (tick_health_requested == 0L || test_type != TYPE.GENERAL || current_tick_start == 0 || tok == null)
+        if (tok == null)
             return;
         long end_time = System.nanoTime();
+        if (tok.event != null)
+            ProfilerEvents.commit(tok.event, tok.world, tok.section);
+        if (history != null && tok.historyId >= 0)
+            history.record(tok.world, tok.historyId, end_time - tok.start);
+        if (tick_health_requested == 0L || test_type != TYPE.GENERAL || current_tick_start == 0)
+            return;
         if (tok.type == TYPE.GENERAL)
         {
             Level world = tok.world;
@@ -142,29 +314,42 @@ public class CarpetProfiler
                     (String) tok.section :
                     String.format("%s.%s%s", world.dimension().location(), tok.section, world.isClientSide ? " (Client)" : "");
             SECTION_STATS.addTo(current_section, end_time - tok.start);
+            TICK_SECTION_TIMES.addTo(current_section, end_time - tok.start);
         }
     }
 
     public static void end_current_entity_section(ProfilerToken tok)
     {
-        if (tick_health_requested == 0L || test_type != TYPE.ENTITY || current_tick_start == 0 || tok == null)
+        if (tok == null)
             return;
         long end_time = System.nanoTime();
+        if (tok.event != null)
+            ProfilerEvents.commit(tok.event, tok.world, tok.section);
+        if (tick_health_requested == 0L || test_type != TYPE.ENTITY || current_tick_start == 0)
+            return;
         Pair<Level,Object> section = Pair.of(tok.world, tok.section);
         ENTITY_TIMES.addTo(section, end_time - tok.start);
+        TICK_ENTITY_TIMES.addTo(section, end_time - tok.start);
         ENTITY_COUNT.addTo(section, 1);
     }
 
     public static void start_tick_profiling()
     {
         current_tick_start = System.nanoTime();
+        if (history != null)
+            history.startTick();
     }
 
     public static void end_tick_profiling(MinecraftServer server)
     {
-        if (current_tick_start == 0L)
+        if (history != null)
+            history.endTick();
+        if (current_tick_start == 0L || tick_health_requested == 0L)
             return;
-        SECTION_STATS.addTo("tick", System.nanoTime() - current_tick_start);
+        long tick_time = System.nanoTime() - current_tick_start;
+        SECTION_STATS.addTo("tick", tick_time);
+        TICK_SECTION_TIMES.put("tick", tick_time);
+        end_tick_histograms(tick_time);
         tick_health_elapsed--;
         if (tick_health_elapsed <= 0)
         {
@@ -172,12 +357,72 @@ public class CarpetProfiler
         }
     }
 
+    private static void end_tick_histograms(long tick_time)
+    {
+        if (tick_time > worst_tick_time)
+        {
+            worst_tick_time = tick_time;
+            worst_tick = tick_health_requested - tick_health_elapsed + 1;
+            worst_tick_sections = new HashMap<>(TICK_SECTION_TIMES);
+            worst_tick_entities = new HashMap<>(TICK_ENTITY_TIMES);
+        }
+        for (Object2LongMap.Entry<String> entry : TICK_SECTION_TIMES.object2LongEntrySet())
+            SECTION_HISTOGRAMS.computeIfAbsent(entry.getKey(), k -> new LatencyHistogram()).record(entry.getLongValue());
+        for (Object2LongMap.Entry<Pair<Level,Object>> entry : TICK_ENTITY_TIMES.object2LongEntrySet())
+            ENTITY_HISTOGRAMS.computeIfAbsent(entry.getKey(), k -> new LatencyHistogram()).record(entry.getLongValue());
+        TICK_SECTION_TIMES.clear();
+        TICK_ENTITY_TIMES.clear();
+    }
+
+    private static void clear_histograms()
+    {
+        TICK_SECTION_TIMES.clear();
+        TICK_ENTITY_TIMES.clear();
+        SECTION_HISTOGRAMS.clear();
+        ENTITY_HISTOGRAMS.clear();
+        worst_tick_time = 0L;
+        worst_tick = 0;
+        worst_tick_sections = Map.of();
+        worst_tick_entities = Map.of();
+    }
+
+    /**
+     * Percentiles of the per tick times of the section over the report, counting ticks it didn't run in as 0
+     */
+    private static String percentiles(Map<?, LatencyHistogram> histograms, Object section, boolean cli)
+    {
+        LatencyHistogram histogram = histograms.get(section);
+        if (histogram == null)
+            return "g ";
+        histogram.record(0L, tick_health_requested - histogram.count());
+        return "%s  p50 %.3f, p95 %.3f, p99 %.3f, max %.3fms".formatted(cli ? "gi" : "g",
+                histogram.percentile(50) / 1000000.0D,
+                histogram.percentile(95) / 1000000.0D,
+                histogram.percentile(99) / 1000000.0D,
+                histogram.max() / 1000000.0D
+        );
+    }
+
+    private static void report_top_sections(CommandSourceStack source, Map<String, Long> sections)
+    {
+        sections.entrySet().stream()
+                .filter(e -> !e.getKey().equals("tick"))
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(5)
+                .forEach(e -> Messenger.m(source,
+                        "w  - %s: ".formatted(e.getKey().replace("minecraft:", "")),
+                        "y %.3fms".formatted(e.getValue() / 1000000.0D)
+                ));
+    }
+
     public static void finalize_tick_report(MinecraftServer server)
     {
         if (test_type == TYPE.GENERAL)
             finalize_tick_report_for_time(server);
         if (test_type == TYPE.ENTITY)
             finalize_tick_report_for_entities(server);
+        if (test_type == TYPE.CHUNK)
+            finalize_tick_report_for_chunks(server);
         cleanup_tick_report();
     }
 
@@ -186,6 +431,9 @@ public class CarpetProfiler
         SECTION_STATS.clear();
         ENTITY_TIMES.clear();
         ENTITY_COUNT.clear();
+        clear_histograms();
+        CHUNK_TIMES.clear();
+        show_chunks = false;
         test_type = TYPE.NONE;
         tick_health_elapsed = 0;
         tick_health_requested = 0;
@@ -201,7 +449,7 @@ public class CarpetProfiler
         long total_tick_time = SECTION_STATS.getLong("tick");
         double divider = 1.0D / tick_health_requested / 1000000;
         Messenger.m(currentRequester, "w ");
-        Messenger.m(currentRequester, "wb Average tick time: ", String.format("yb %.3fms", divider * total_tick_time));
+        Messenger.m(currentRequester, "wb Average tick time: ", String.format("yb %.3fms", divider * total_tick_time), percentiles(SECTION_HISTOGRAMS, "tick", false));
         long accumulated = 0L;
 
         for (String section : GENERAL_SECTIONS.keySet())
@@ -214,7 +462,8 @@ public class CarpetProfiler
                         currentRequester,
                         "w " + section + ": ",
                         "^ " + GENERAL_SECTIONS.get(section),
-                        "y %.3fms".formatted(amount)
+                        "y %.3fms".formatted(amount),
+                        percentiles(SECTION_HISTOGRAMS, section, false)
                 );
             }
         }
@@ -227,7 +476,8 @@ public class CarpetProfiler
                         currentRequester,
                         "gi "+section+": ",
                         "^ " + SCARPET_SECTIONS.get(section),
-                        "di %.3fms".formatted(amount)
+                        "di %.3fms".formatted(amount),
+                        percentiles(SECTION_HISTOGRAMS, section, true)
                 );
             }
         }
@@ -262,7 +512,8 @@ public class CarpetProfiler
                             currentRequester,
                             "%s - %s: ".formatted(cli ? "gi" : "w", section),
                             "^ " + SECTIONS.get(section),
-                            "%s %.3fms".formatted(cli ? "di" : "y", amount)
+                            "%s %.3fms".formatted(cli ? "di" : "y", amount),
+                            percentiles(SECTION_HISTOGRAMS, dimensionId + "." + section, cli)
                     );
                 }
             }
@@ -271,6 +522,66 @@ public class CarpetProfiler
         long rest = total_tick_time - accumulated;
 
         Messenger.m(currentRequester, String.format("gi The Rest, whatever that might be: %.3fms", divider * rest));
+        report_worst_tick();
+        report_top_sections(currentRequester, worst_tick_sections);
+    }
+
+    private static void report_worst_tick()
+    {
+        if (worst_tick == 0)
+            return;
+        Messenger.m(currentRequester, "wb Worst tick: ", "yb %.3fms".formatted(worst_tick_time / 1000000.0D), "w , tick %d of %d".formatted(worst_tick, tick_health_requested));
+    }
+
+    public static int report_history(CommandSourceStack source, int seconds)
+    {
+        if (history == null)
+        {
+            Messenger.m(source, "r Tick history is not recorded, turn it on with the profilerHistory rule");
+            return 0;
+        }
+        int ticks = Math.min(history.recorded(), seconds * 20);
+        if (ticks == 0)
+        {
+            Messenger.m(source, "w No ticks recorded yet");
+            return 0;
+        }
+        long total = 0L;
+        LatencyHistogram tickTimes = new LatencyHistogram();
+        int[] slowest = new int[Math.min(5, ticks)];
+        int found = 0;
+        for (int ago = 0; ago < ticks; ago++)
+        {
+            long time = history.tickNanos(ago);
+            total += time;
+            tickTimes.record(time);
+            // keeping the slowest ones sorted, slowest first
+            int i = found < slowest.length ? found++ : slowest.length;
+            while (i > 0 && history.tickNanos(slowest[i - 1]) < time)
+            {
+                if (i < slowest.length)
+                    slowest[i] = slowest[i - 1];
+                i--;
+            }
+            if (i < slowest.length)
+                slowest[i] = ago;
+        }
+        Messenger.m(source, "w ");
+        Messenger.m(source, "wb Average tick time over the last %d ticks: ".formatted(ticks), String.format("yb %.3fms", total / 1000000.0D / ticks));
+        Messenger.m(source, "g p50 %.3f, p95 %.3f, p99 %.3f, max %.3fms".formatted(
+                tickTimes.percentile(50) / 1000000.0D,
+                tickTimes.percentile(95) / 1000000.0D,
+                tickTimes.percentile(99) / 1000000.0D,
+                tickTimes.max() / 1000000.0D
+        ));
+        long now = System.currentTimeMillis();
+        for (int ago : slowest)
+        {
+            TickHistory.Tick tick = history.tick(ago);
+            Messenger.m(source, "wb %.3fms".formatted(tick.nanos() / 1000000.0D), "w  tick, %.1fs ago:".formatted((now - tick.endMillis()) / 1000.0D));
+            report_top_sections(source, tick.sections());
+        }
+        return 1;
     }
 
     private static String sectionName(Pair<Level,Object> section)
@@ -303,7 +614,7 @@ public class CarpetProfiler
         double divider = 1.0D / tick_health_requested / 1000000;
         double divider_1 = 1.0D / (tick_health_requested - 1) / 1000000;
         Messenger.m(currentRequester, "w ");
-        Messenger.m(currentRequester, "wb Average tick time: ", String.format("yb %.3fms", divider * total_tick_time));
+        Messenger.m(currentRequester, "wb Average tick time: ", String.format("yb %.3fms", divider * total_tick_time), percentiles(SECTION_HISTOGRAMS, "tick", false));
         SECTION_STATS.removeLong("tick");
         Messenger.m(currentRequester, "wb Top 10 counts:");
         int total = 0;
@@ -330,9 +641,94 @@ public class CarpetProfiler
                     "%s - %s: ", cli?"gi":"w",
                     sectionName(section)),
                     String.format("%s %.2fms", cli?"di":"y",
-                    (cli ? divider : divider_1) * sectionEntry.getLongValue()
-            ));
+                    (cli ? divider : divider_1) * sectionEntry.getLongValue()),
+                    percentiles(ENTITY_HISTOGRAMS, section, cli)
+            );
+        }
+        report_worst_tick();
+        worst_tick_entities.entrySet().stream()
+                .sorted(Map.Entry.<Pair<Level,Object>, Long>comparingByValue().reversed())
+                .limit(5)
+                .forEach(e -> Messenger.m(currentRequester,
+                        "w  - %s: ".formatted(sectionName(e.getKey())),
+                        "y %.3fms".formatted(e.getValue() / 1000000.0D)
+                ));
+    }
+
+    private record ChunkTime(Level world, long chunk, long total, long[] times)
+    {
+    }
+
+    public static void finalize_tick_report_for_chunks(MinecraftServer server)
+    {
+        if (currentRequester == null)
+            return;
+        double divider = 1.0D / tick_health_requested / 1000000;
+        Messenger.m(currentRequester, "w ");
+        Messenger.m(currentRequester, "wb Average tick time: ", String.format("yb %.3fms", divider * SECTION_STATS.getLong("tick")));
+        List<ChunkTime> chunks = new ArrayList<>();
+        CHUNK_TIMES.forEach((world, times) -> {
+            Long2LongOpenHashMap totals = new Long2LongOpenHashMap();
+            for (Long2LongOpenHashMap kindTimes : times)
+                for (Long2LongMap.Entry entry : kindTimes.long2LongEntrySet())
+                    totals.addTo(entry.getLongKey(), entry.getLongValue());
+            for (Long2LongMap.Entry entry : totals.long2LongEntrySet())
+            {
+                long[] chunkTimes = new long[times.length];
+                for (int i = 0; i < times.length; i++)
+                    chunkTimes[i] = times[i].get(entry.getLongKey());
+                chunks.add(new ChunkTime(world, entry.getLongKey(), entry.getLongValue(), chunkTimes));
+            }
+        });
+        chunks.sort(Comparator.comparingLong(ChunkTime::total).reversed());
+        Messenger.m(currentRequester, "wb Top 10 chunks, out of %d that ticked anything:".formatted(chunks.size()));
+        for (ChunkTime chunk : chunks.subList(0, Math.min(10, chunks.size())))
+        {
+            ChunkPos pos = new ChunkPos(chunk.chunk());
+            ResourceLocation dimkey = chunk.world().dimension().location();
+            String dim = "minecraft".equals(dimkey.getNamespace())?dimkey.getPath():dimkey.toString();
+            StringBuilder kinds = new StringBuilder();
+            for (CHUNK_TIME kind : CHUNK_TIME.values())
+            {
+                double amount = divider * chunk.times()[kind.ordinal()];
+                if (amount > 0.001)
+                    kinds.append(kinds.isEmpty() ? "" : ", ").append("%s %.3f".formatted(kind.label, amount));
+            }
+            Messenger.m(currentRequester,
+                    "w  - [%d, %d] in %s: ".formatted(pos.x, pos.z, dim),
+                    "?/execute in %s run tp @s %d ~ %d".formatted(dimkey, pos.getMiddleBlockX(), pos.getMiddleBlockZ()),
+                    "^w Click to teleport there",
+                    "y %.3fms".formatted(divider * chunk.total()),
+                    "g  (" + kinds + ")"
+            );
+        }
+        ServerPlayer player = currentRequester.getPlayer();
+        if (show_chunks && player != null && !chunks.isEmpty())
+            show_chunk_times(server, player, chunks.subList(0, Math.min(50, chunks.size())));
+    }
+
+    /**
+     * Draws boxes around the chunks for 30 seconds, from yellow to red for the slowest one
+     */
+    private static void show_chunk_times(MinecraftServer server, ServerPlayer player, List<ChunkTime> chunks)
+    {
+        double slowest = chunks.get(0).total();
+        List<ShapeDispatcher.ShapeWithConfig> shapes = new ArrayList<>();
+        for (ChunkTime chunk : chunks)
+        {
+            ChunkPos pos = new ChunkPos(chunk.chunk());
+            int green = (int) (255 * (1.0D - chunk.total() / slowest));
+            int color = 0xFF000000 | green << 16;
+            Map<String, Value> params = new HashMap<>();
+            params.put("dim", new StringValue(chunk.world().dimension().location().toString()));
+            params.put("duration", new NumericValue(600));
+            params.put("from", ListValue.ofNums(pos.getMinBlockX(), chunk.world().getMinY(), pos.getMinBlockZ()));
+            params.put("to", ListValue.ofNums(pos.getMaxBlockX() + 1, chunk.world().getMaxY() + 1, pos.getMaxBlockZ() + 1));
+            params.put("color", new NumericValue(color | 0xFF));
+            params.put("fill", new NumericValue(color | 0x30));
+            shapes.add(new ShapeDispatcher.ShapeWithConfig(ShapeDispatcher.create(server, "box", params), params));
         }
+        ShapeDispatcher.sendShape(List.of(player), shapes, server.registryAccess());
     }
 
     private static <T> Iterable<Object2LongMap.Entry<T>> sortedByValue(Object2LongMap<T> mapToSort) {
@@ -0,0 +1,97 @@
+package carpet.utils;
+
+/**
+ * Histogram of nanosecond times with logarithmic buckets, 16 for every power of two, so any recorded value is known
+ * within about 6%, at a fixed size no matter how many values or how large they get. Values below 16 are exact.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long total;
+    private long max;
+
+    private static int bucket(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) Math.max(value, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowerBound(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+
+    private static long width(int bucket)
+    {
+        return bucket < SUB_BUCKETS ? 1 : 1L << (bucket / SUB_BUCKETS - 1);
+    }
+
+    public void record(long value)
+    {
+        record(value, 1);
+    }
+
+    public void record(long value, long times)
+    {
+        if (times <= 0)
+        {
+            return;
+        }
+        counts[bucket(value)] += times;
+        count += times;
+        total += value * times;
+        max = Math.max(max, value);
+    }
+
+    public long count()
+    {
+        return count;
+    }
+
+    public long max()
+    {
+        return max;
+    }
+
+    public double mean()
+    {
+        return count == 0 ? 0.0 : (double) total / count;
+    }
+
+    /**
+     * Value at the given percentile, from 0 to 100, taken from the middle of its bucket
+     */
+    public long percentile(double percentile)
+    {
+        if (count == 0)
+        {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+        {
+            seen += counts[bucket];
+            if (seen >= rank)
+            {
+                return Math.min(max, lowerBound(bucket) + width(bucket) / 2);
+            }
+        }
+        return max;
+    }
+}
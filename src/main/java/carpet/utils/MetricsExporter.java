@@ -0,0 +1,195 @@
+package carpet.utils;
+
+import carpet.CarpetSettings;
+import carpet.helpers.HopperCounter;
+import carpet.logging.logHelpers.PacketCounter;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import net.minecraft.Util;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.ServerTickRateManager;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.TimeUtil;
+import net.minecraft.world.entity.MobCategory;
+import net.minecraft.world.item.DyeColor;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.NaturalSpawner;
+import net.minecraft.world.level.storage.LevelResource;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Writes the stats carpet keeps in memory for its loggers and the profiler to {@code carpet_metrics.prom} in the world
+ * folder, in the Prometheus text format, every {@code metricsExport} seconds. The file is meant for the node exporter
+ * textfile collector or anything else that can read it, so the server can be monitored without a player online.
+ * Stats are gathered on the server thread, the file gets written on the IO pool.
+ */
+public class MetricsExporter
+{
+    public static final String FILE_NAME = "carpet_metrics.prom";
+
+    // writes are chained so they go one at a time and in order, touched only on the server thread
+    private static CompletableFuture<Void> lastWrite = CompletableFuture.completedFuture(null);
+    // summary sums and counts have to keep growing between exports, quantiles only cover the last one
+    private static double tickTimeSum = 0.0;
+    private static long tickTimeCount = 0;
+
+    private final Map<String, StringBuilder> families = new LinkedHashMap<>();
+
+    public static void tick(MinecraftServer server)
+    {
+        int seconds = CarpetSettings.metricsExport;
+        if (seconds <= 0 || server.getTickCount() % (seconds * 20) != 0)
+            return;
+        String metrics = new MetricsExporter().collect(server, seconds * 20);
+        Path file = server.getWorldPath(LevelResource.ROOT).resolve(FILE_NAME);
+        lastWrite = lastWrite.thenRunAsync(() -> write(file, metrics), Util.ioPool());
+    }
+
+    private static void write(Path file, String metrics)
+    {
+        // readers should never see a half written file
+        Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+        try
+        {
+            Files.writeString(temp, metrics, StandardCharsets.UTF_8);
+            try
+            {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // anything thrown here would fail the chain, and with it all later writes
+            CarpetSettings.LOG.warn("Failed to write metrics to " + file, e);
+        }
+    }
+
+    private String collect(MinecraftServer server, int ticks)
+    {
+        double mspt = (double) server.getAverageTickTimeNanos() / TimeUtil.NANOSECONDS_PER_MILLISECOND;
+        ServerTickRateManager trm = server.tickRateManager();
+        double tps = trm.isFrozen() ? 0.0 : 1000.0D / Math.max(trm.isSprinting() ? 0.0 : trm.millisecondsPerTick(), mspt);
+        add("carpet_mspt", "gauge", "Average milliseconds per tick over the last 100 ticks", "", mspt);
+        add("carpet_tps", "gauge", "Ticks per second, as shown by the tps logger", "", tps);
+        add("carpet_tick_rate", "gauge", "Target ticks per second", "", trm.tickrate());
+        add("carpet_players", "gauge", "Players online", "", server.getPlayerCount());
+
+        TickHistory history = CarpetProfiler.history();
+        if (history != null && history.recorded() > 0)
+        {
+            int recorded = Math.min(ticks, history.recorded());
+            LatencyHistogram tickTimes = new LatencyHistogram();
+            for (int ago = 0; ago < recorded; ago++)
+                tickTimes.record(history.tickNanos(ago));
+            tickTimeSum += tickTimes.mean() * tickTimes.count() / 1000000.0D;
+            tickTimeCount += tickTimes.count();
+            String help = "Tick times, quantiles since the last export, needs profilerHistory";
+            for (double quantile : new double[]{0.5, 0.95, 0.99})
+            {
+                add("carpet_tick_time_ms", "", "summary", help,
+                        labels("quantile", Double.toString(quantile)), tickTimes.percentile(quantile * 100) / 1000000.0D);
+            }
+            add("carpet_tick_time_ms", "_sum", "summary", help, "", tickTimeSum);
+            add("carpet_tick_time_ms", "_count", "summary", help, "", tickTimeCount);
+            add("carpet_tick_time_ms_max", "gauge", "Longest tick since the last export, needs profilerHistory", "", tickTimes.max() / 1000000.0D);
+            for (Map.Entry<ResourceKey<Level>, Map<String, Long>> dimension : history.sectionTotals(recorded).entrySet())
+            {
+                String dim = dimension.getKey() == null ? "" : dimension.getKey().location().toString();
+                dimension.getValue().forEach((section, nanos) -> add("carpet_profiler_section_ms", "gauge",
+                        "Average milliseconds per tick spent in profiler sections since the last export, needs profilerHistory",
+                        labels("section", section, "dimension", dim), nanos / 1000000.0D / recorded));
+            }
+        }
+
+        for (DyeColor color : DyeColor.values())
+        {
+            HopperCounter counter = HopperCounter.getCounter(color);
+            long elapsed = counter == null ? 0 : counter.getElapsedTicks(server);
+            if (elapsed <= 0)
+                continue;
+            long items = counter.getTotalItems();
+            add("carpet_hopper_counter_items", "gauge", "Items counted by the hopper counter since it was reset", labels("color", color.getName()), items);
+            add("carpet_hopper_counter_items_per_hour", "gauge", "Items per hour of game time counted by the hopper counter", labels("color", color.getName()), items * (20.0D * 60 * 60) / elapsed);
+        }
+
+        for (ServerLevel level : server.getAllLevels())
+        {
+            NaturalSpawner.SpawnState lastSpawner = level.getChunkSource().getLastSpawnState();
+            Integer chunks = SpawnReporter.chunkCounts.get(level.dimension());
+            if (lastSpawner == null || chunks == null)
+                continue;
+            Object2IntMap<MobCategory> counts = lastSpawner.getMobCategoryCounts();
+            String dim = level.dimension().location().toString();
+            for (MobCategory category : SpawnReporter.cachedMobCategories())
+            {
+                String labels = labels("dimension", dim, "category", category.getName());
+                add("carpet_mobcap_mobs", "gauge", "Mobs counting towards the mob cap", labels, counts.getOrDefault(category, 0));
+                add("carpet_mobcap_max", "gauge", "Mob cap", labels, SpawnReporter.mobcap(chunks, category));
+            }
+        }
+
+        if (SpawnReporter.trackingSpawns())
+        {
+            for (Object2LongMap.Entry<Pair<ResourceKey<Level>, MobCategory>> entry : SpawnReporter.spawn_attempts.object2LongEntrySet())
+            {
+                Pair<ResourceKey<Level>, MobCategory> key = entry.getKey();
+                String labels = labels("dimension", key.getLeft().location().toString(), "category", key.getRight().getName());
+                add("carpet_spawn_tracking_attempts_total", "counter", "Spawn attempts since /spawn tracking started", labels, entry.getLongValue());
+                add("carpet_spawn_tracking_spawns_total", "counter", "Mobs spawned since /spawn tracking started", labels, SpawnReporter.spawn_ticks_spawns.getLong(key));
+                add("carpet_spawn_tracking_full_ticks_total", "counter", "Ticks the mob cap was full since /spawn tracking started", labels, SpawnReporter.spawn_ticks_full.getLong(key));
+            }
+        }
+
+        add("carpet_packets_received_total", "counter", "Packets received by the server", "", PacketCounter.allIn());
+        add("carpet_packets_sent_total", "counter", "Packets sent by the server", "", PacketCounter.allOut());
+
+        StringBuilder text = new StringBuilder();
+        families.values().forEach(text::append);
+        return text.toString();
+    }
+
+    private static String labels(String... namesAndValues)
+    {
+        StringBuilder labels = new StringBuilder("{");
+        for (int i = 0; i < namesAndValues.length; i += 2)
+        {
+            if (i > 0)
+                labels.append(',');
+            String value = namesAndValues[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+            labels.append(namesAndValues[i]).append("=\"").append(value).append('"');
+        }
+        return labels.append('}').toString();
+    }
+
+    private void add(String name, String type, String help, String labels, double value)
+    {
+        add(name, "", type, help, labels, value);
+    }
+
+    /**
+     * Adds a sample to its metric, which starts with the help and type lines, so all samples of a metric end up together.
+     * The suffix is for the extra samples of summaries, like {@code _sum} and {@code _count}
+     */
+    private void add(String name, String suffix, String type, String help, String labels, double value)
+    {
+        StringBuilder family = families.computeIfAbsent(name, n -> new StringBuilder()
+                .append("# HELP ").append(n).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(n).append(' ').append(type).append('\n'));
+        family.append(name).append(suffix).append(labels).append(' ').append(value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value)).append('\n');
+    }
+}
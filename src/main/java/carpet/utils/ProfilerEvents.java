@@ -0,0 +1,197 @@
+package carpet.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.entity.BlockEntityType;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Java Flight Recorder events for the sections timed by {@link CarpetProfiler}, so long sessions can be recorded with
+ * {@code /jfr start} or {@code -XX:StartFlightRecording} and looked at in JDK Mission Control next to GC and allocation
+ * data. Events are only created while a recording, tracked with a recorder listener, is running with their type
+ * enabled, so with no recording, or only ones that leave carpet events out, the profiler hooks cost the same as before.
+ */
+public final class ProfilerEvents
+{
+    public static volatile boolean recording = false;
+    private static final Set<Long> running = ConcurrentHashMap.newKeySet();
+
+    static
+    {
+        FlightRecorder.addListener(new FlightRecorderListener()
+        {
+            @Override
+            public void recorderInitialized(FlightRecorder recorder)
+            {
+                // recordings started with the JVM, before carpet got here
+                for (Recording r : recorder.getRecordings())
+                    recordingStateChanged(r);
+            }
+
+            @Override
+            public void recordingStateChanged(Recording r)
+            {
+                if (r.getState() == RecordingState.RUNNING)
+                    running.add(r.getId());
+                else
+                    running.remove(r.getId());
+                recording = !running.isEmpty();
+            }
+        });
+    }
+
+    @Name("carpet.ProfilerSection")
+    @Label("Profiler Section")
+    @Category({"Carpet", "Profiler"})
+    @Description("Section of the server tick, as shown in /profile health")
+    @StackTrace(false)
+    static final class Section extends Event
+    {
+        @Label("Section")
+        String section;
+        @Label("Dimension")
+        String dimension;
+        @Label("Client Side")
+        boolean clientSide;
+    }
+
+    @Name("carpet.EntityTick")
+    @Label("Entity Tick")
+    @Category({"Carpet", "Profiler"})
+    @Description("Tick of a single entity")
+    @StackTrace(false)
+    @Threshold("100 us") // ticks of all the entities would flood the recording
+    static final class EntityTick extends Event
+    {
+        @Label("Entity Type")
+        String entityType;
+        @Label("Dimension")
+        String dimension;
+        @Label("Client Side")
+        boolean clientSide;
+        @Label("X")
+        int x;
+        @Label("Y")
+        int y;
+        @Label("Z")
+        int z;
+    }
+
+    @Name("carpet.BlockEntityTick")
+    @Label("Block Entity Tick")
+    @Category({"Carpet", "Profiler"})
+    @Description("Tick of a single block entity")
+    @StackTrace(false)
+    @Threshold("100 us")
+    static final class BlockEntityTick extends Event
+    {
+        @Label("Block Entity Type")
+        String blockEntityType;
+        @Label("Dimension")
+        String dimension;
+        @Label("Client Side")
+        boolean clientSide;
+        @Label("X")
+        int x;
+        @Label("Y")
+        int y;
+        @Label("Z")
+        int z;
+    }
+
+    private static final EventType SECTION = EventType.getEventType(Section.class);
+    private static final EventType ENTITY_TICK = EventType.getEventType(EntityTick.class);
+    private static final EventType BLOCK_ENTITY_TICK = EventType.getEventType(BlockEntityTick.class);
+
+    private ProfilerEvents()
+    {
+    }
+
+    public static boolean sectionsEnabled()
+    {
+        return recording && SECTION.isEnabled();
+    }
+
+    public static boolean entityTicksEnabled()
+    {
+        return recording && ENTITY_TICK.isEnabled();
+    }
+
+    public static boolean blockEntityTicksEnabled()
+    {
+        return recording && BLOCK_ENTITY_TICK.isEnabled();
+    }
+
+    public static Event section()
+    {
+        Section event = new Section();
+        event.begin();
+        return event;
+    }
+
+    public static Event entityTick(BlockPos pos)
+    {
+        EntityTick event = new EntityTick();
+        event.x = pos.getX();
+        event.y = pos.getY();
+        event.z = pos.getZ();
+        event.begin();
+        return event;
+    }
+
+    public static Event blockEntityTick(BlockPos pos)
+    {
+        BlockEntityTick event = new BlockEntityTick();
+        event.x = pos.getX();
+        event.y = pos.getY();
+        event.z = pos.getZ();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event started for the section, names get filled in only for events that make it to the recording
+     */
+    public static void commit(Event event, Level world, Object section)
+    {
+        event.end();
+        if (!event.shouldCommit())
+            return;
+        String dimension = world == null ? null : world.dimension().location().toString();
+        boolean clientSide = world != null && world.isClientSide;
+        if (event instanceof Section e)
+        {
+            e.section = (String) section;
+            e.dimension = dimension;
+            e.clientSide = clientSide;
+        }
+        else if (event instanceof EntityTick e)
+        {
+            e.entityType = EntityType.getKey((EntityType<?>) section).toString();
+            e.dimension = dimension;
+            e.clientSide = clientSide;
+        }
+        else if (event instanceof BlockEntityTick e)
+        {
+            e.blockEntityType = String.valueOf(BlockEntityType.getKey((BlockEntityType<?>) section));
+            e.dimension = dimension;
+            e.clientSide = clientSide;
+        }
+        event.commit();
+    }
+}
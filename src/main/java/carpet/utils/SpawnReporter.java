@@ -93,6 +93,14 @@ public class SpawnReporter
         return MAGIC_NUMBER / (Math.pow(2.0,(SpawnReporter.mobcap_exponent/4)));
     }*/
 
+    /**
+     * Mob cap of the category with the given number of chunks eligible for spawning
+     */
+    public static int mobcap(int chunkcount, MobCategory category)
+    {
+        return (int)(chunkcount * ((double)category.getMaxInstancesPerChunk() / MAGIC_NUMBER)); // from ServerChunkManager.CHUNKS_ELIGIBLE_FOR_SPAWNING
+    }
+
     public static List<Component> printMobcapsForDimension(ServerLevel world, boolean multiline)
     {
         ResourceKey<Level> dim = world.dimension();
@@ -113,7 +121,7 @@ public class SpawnReporter
         for (MobCategory category : cachedMobCategories())
         {
             int cur = dimCounts.getOrDefault(category, -1);
-            int max = (int)(chunkcount * ((double)category.getMaxInstancesPerChunk() / MAGIC_NUMBER)); // from ServerChunkManager.CHUNKS_ELIGIBLE_FOR_SPAWNING
+            int max = mobcap(chunkcount, category);
             String color = Messenger.heatmap_color(cur, max);
             String mobColor = Messenger.creatureTypeColor(category);
             if (multiline)
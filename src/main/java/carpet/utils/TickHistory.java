@@ -0,0 +1,225 @@
+package carpet.utils;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rolling history of tick times, recorded by {@link CarpetProfiler} when {@code profilerHistory} is on.
+ * Sections get a number the first time they show up, shared by all histories so callers can keep it, and their times
+ * go into ring buffers with a slot per tick, one set for sections not tied to a dimension and one for each dimension,
+ * so recording a section doesn't allocate or build any keys.
+ */
+public class TickHistory
+{
+    private final int capacity;
+    private final long[] tickTimes;
+    private final long[] tickEnds;
+    private long started;
+    private long tickStart;
+    private long finished;
+    private static final Object2IntOpenHashMap<String> SECTION_IDS = new Object2IntOpenHashMap<>();
+    private static final List<String> SECTION_NAMES = new ArrayList<>();
+    private final Sections global = new Sections();
+    private final Map<ResourceKey<Level>, Sections> dimensions = new LinkedHashMap<>();
+    // sections of the level recorded last, levels tick one after another so this is looked up once per level and tick
+    private Level lastWorld = null;
+    private Sections lastSections = global;
+
+    static
+    {
+        SECTION_IDS.defaultReturnValue(-1);
+    }
+
+    private final class Sections
+    {
+        private long[][] times = new long[0][];
+
+        void add(int id, int slot, long nanos)
+        {
+            if (id >= times.length)
+            {
+                times = Arrays.copyOf(times, id + 1);
+            }
+            long[] section = times[id];
+            if (section == null)
+            {
+                section = new long[capacity];
+                times[id] = section;
+            }
+            section[slot] += nanos;
+        }
+
+        void clear(int slot)
+        {
+            for (long[] section : times)
+            {
+                if (section != null)
+                {
+                    section[slot] = 0;
+                }
+            }
+        }
+
+        void sum(int slot, Map<String, Long> result)
+        {
+            for (int id = 0; id < times.length; id++)
+            {
+                if (times[id] != null && times[id][slot] > 0)
+                {
+                    result.merge(sectionName(id), times[id][slot], Long::sum);
+                }
+            }
+        }
+
+        void collect(String prefix, int slot, Map<String, Long> result)
+        {
+            for (int id = 0; id < times.length; id++)
+            {
+                if (times[id] != null && times[id][slot] > 0)
+                {
+                    result.put(prefix + sectionName(id), times[id][slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A recorded tick, with times of its sections keyed the same way as in tick reports: dimension sections are
+     * prefixed with the dimension id
+     */
+    public record Tick(long number, long endMillis, long nanos, Map<String, Long> sections)
+    {
+    }
+
+    public TickHistory(int capacity)
+    {
+        this.capacity = capacity;
+        this.tickTimes = new long[capacity];
+        this.tickEnds = new long[capacity];
+    }
+
+    /**
+     * Number of the section, to be passed to {@link #record}
+     */
+    public static synchronized int sectionId(String section)
+    {
+        int id = SECTION_IDS.getInt(section);
+        if (id < 0)
+        {
+            id = SECTION_NAMES.size();
+            SECTION_NAMES.add(section);
+            SECTION_IDS.put(section, id);
+        }
+        return id;
+    }
+
+    private static synchronized String sectionName(int id)
+    {
+        return SECTION_NAMES.get(id);
+    }
+
+    public int capacity()
+    {
+        return capacity;
+    }
+
+    private int slot(long tick)
+    {
+        return (int) (tick % capacity);
+    }
+
+    public void startTick()
+    {
+        tickStart = System.nanoTime();
+        int slot = slot(started++);
+        tickTimes[slot] = 0;
+        tickEnds[slot] = 0;
+        global.clear(slot);
+        for (Sections sections : dimensions.values())
+        {
+            sections.clear(slot);
+        }
+        // not keeping unloaded levels around
+        lastWorld = null;
+        lastSections = global;
+    }
+
+    public void endTick()
+    {
+        if (started == 0)
+        {
+            return;
+        }
+        int slot = slot(started - 1);
+        tickTimes[slot] = System.nanoTime() - tickStart;
+        tickEnds[slot] = System.currentTimeMillis();
+        finished = started;
+    }
+
+    public void record(Level world, int section, long nanos)
+    {
+        if (started == 0)
+        {
+            return;
+        }
+        if (world != lastWorld)
+        {
+            Sections sections = world == null ? global : dimensions.get(world.dimension());
+            if (sections == null)
+            {
+                sections = new Sections();
+                dimensions.put(world.dimension(), sections);
+            }
+            lastWorld = world;
+            lastSections = sections;
+        }
+        lastSections.add(section, slot(started - 1), nanos);
+    }
+
+    /**
+     * Number of finished ticks still in the history, the slot of the tick in progress doesn't count
+     */
+    public int recorded()
+    {
+        return (int) Math.min(finished, capacity - 1);
+    }
+
+    /**
+     * Tick time of the tick that finished the given number of ticks ago, 0 being the last one
+     */
+    public long tickNanos(int ago)
+    {
+        return tickTimes[slot(finished - 1 - ago)];
+    }
+
+    /**
+     * Section times summed over the given number of last ticks, by dimension, with null for sections not tied to one
+     */
+    public Map<ResourceKey<Level>, Map<String, Long>> sectionTotals(int ticks)
+    {
+        Map<ResourceKey<Level>, Map<String, Long>> totals = new LinkedHashMap<>();
+        for (int ago = 0; ago < Math.min(ticks, recorded()); ago++)
+        {
+            int slot = slot(finished - 1 - ago);
+            global.sum(slot, totals.computeIfAbsent(null, k -> new LinkedHashMap<>()));
+            dimensions.forEach((dimension, sections) -> sections.sum(slot, totals.computeIfAbsent(dimension, k -> new LinkedHashMap<>())));
+        }
+        return totals;
+    }
+
+    public Tick tick(int ago)
+    {
+        int slot = slot(finished - 1 - ago);
+        Map<String, Long> sections = new LinkedHashMap<>();
+        global.collect("", slot, sections);
+        dimensions.forEach((dimension, dimensionSections) -> dimensionSections.collect(dimension.location() + ".", slot, sections));
+        return new Tick(finished - ago, tickEnds[slot], tickTimes[slot], sections);
+    }
+}